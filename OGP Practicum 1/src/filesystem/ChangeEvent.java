@@ -0,0 +1,150 @@
+package filesystem;
+
+/**
+ * A class of events that report changes to the children of a watched directory.
+ *
+ * An event can stand for several changes of the same kind to the same item, that
+ * are coalesced while the event waits to be delivered: the number of changes is
+ * counted, the changes of the size of a file are added up, and the name or the
+ * directory of the item before the first change is kept.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+public final class ChangeEvent {
+
+	/**
+	 * An enumeration of the kinds of changes.
+	 */
+	public enum Kind {
+		/**
+		 * An item has been added to a watched directory: created in it, or moved into it
+		 * from a directory that is not watched.
+		 */
+		CHILD_ADDED,
+		/**
+		 * An item has been removed from a watched directory: deleted, or moved out of it
+		 * to a directory that is not watched.
+		 */
+		CHILD_REMOVED,
+		/**
+		 * An item in a watched directory has been renamed.
+		 */
+		RENAMED,
+		/**
+		 * An item has been moved between two directories that are both watched.
+		 */
+		MOVED,
+		/**
+		 * The size of a file in a watched directory has changed.
+		 */
+		SIZE_CHANGED,
+		/**
+		 * The writability of an item in a watched directory has changed.
+		 */
+		WRITABILITY_CHANGED,
+		/**
+		 * More items have changed than the watch can buffer, the changes have been dropped.
+		 */
+		OVERFLOW
+	}
+
+	private final Kind kind;
+
+	private final Item item;
+
+	private Directory directory;
+
+	private final Directory oldDirectory;
+
+	private final String oldName;
+
+	private long sizeDelta;
+
+	private long count = 1;
+
+	ChangeEvent(Kind kind, Item item, Directory directory, Directory oldDirectory, String oldName, long sizeDelta) {
+		this.kind = kind;
+		this.item = item;
+		this.directory = directory;
+		this.oldDirectory = oldDirectory;
+		this.oldName = oldName;
+		this.sizeDelta = sizeDelta;
+	}
+
+	/**
+	 * Coalesces a later change of the same kind to the same item into this event.
+	 * Only called before this event is delivered.
+	 */
+	void merge(Directory directory, long sizeDelta) {
+		this.directory = directory;
+		this.sizeDelta += sizeDelta;
+		this.count++;
+	}
+
+	/**
+	 * Returns an event that reports that the given number of changes in the given directory have been dropped.
+	 */
+	static ChangeEvent overflow(Directory directory, long count) {
+		ChangeEvent event = new ChangeEvent(Kind.OVERFLOW, null, directory, null, null, 0);
+		event.count = count;
+		return event;
+	}
+
+	/**
+	 * Returns the kind of the changes.
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Returns the item that has changed, null for an overflow.
+	 */
+	public Item getItem() {
+		return item;
+	}
+
+	/**
+	 * Returns the directory of the item at the last change: the directory it has been
+	 * added to, removed from, moved to or changed in. Returns the watched directory for an overflow.
+	 */
+	public Directory getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the directory the item has been moved from at the first change,
+	 * null if the changes are not moves.
+	 */
+	public Directory getOldDirectory() {
+		return oldDirectory;
+	}
+
+	/**
+	 * Returns the name of the item before the first change, null if the changes are not renames.
+	 */
+	public String getOldName() {
+		return oldName;
+	}
+
+	/**
+	 * Returns the sum of the changes of the size of the file, 0 if the changes are not resizes.
+	 */
+	public long getSizeDelta() {
+		return sizeDelta;
+	}
+
+	/**
+	 * Returns the number of changes reported by this event.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return kind + (item == null ? "" : " " + item.getName()) + " x" + count;
+	}
+}
@@ -0,0 +1,93 @@
+package filesystem;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A guard around the changes to single items that are made without the structure lock,
+ * so that a new copy can wait for the changes that may not have seen it.
+ *
+ * A thread enters the guard before it checks that no copy shares the items above the
+ * item it changes, and leaves the guard once the change is made. A copy is registered
+ * before it waits for the threads in the guard, so every change either sees the copy
+ * and materializes it first, or is made before the copy reads the state it shares.
+ *
+ * Every thread has a counter of its own, that is odd while the thread is in the guard,
+ * so entering and leaving the guard never waits for other threads.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class ChangeGuard {
+
+	private ChangeGuard() {
+	}
+
+	/**
+	 * A class of counters of the times one thread entered and left the guard.
+	 */
+	private static final class Counter {
+
+		/**
+		 * Variable referencing the thread of this counter, cleared once the thread is gone.
+		 */
+		private final WeakReference<Thread> thread = new WeakReference<Thread>(Thread.currentThread());
+
+		/**
+		 * Variable registering the number of times the thread entered or left the guard.
+		 * @note	Only the thread of this counter changes it.
+		 */
+		private volatile long count = 0;
+	}
+
+	/**
+	 * Variable referencing the counters of all threads that have used the guard.
+	 */
+	private static final CopyOnWriteArrayList<Counter> counters = new CopyOnWriteArrayList<Counter>();
+
+	/**
+	 * Variable referencing the counter of the current thread.
+	 */
+	private static final ThreadLocal<Counter> counter = new ThreadLocal<Counter>() {
+		@Override
+		protected Counter initialValue() {
+			Counter counter = new Counter();
+			counters.add(counter);
+			return counter;
+		}
+	};
+
+	/**
+	 * Enters the guard. The current thread may not be in the guard already.
+	 */
+	static void enter() {
+		counter.get().count++;
+	}
+
+	/**
+	 * Leaves the guard. The current thread must be in the guard.
+	 */
+	static void leave() {
+		counter.get().count++;
+	}
+
+	/**
+	 * Waits until every other thread that is in the guard has left it.
+	 * @note	Threads that enter the guard in the mean time are not waited for.
+	 */
+	static void awaitChanges() {
+		Counter own = counter.get();
+		for (Counter other : counters) {
+			if (other.thread.get() == null) {
+				counters.remove(other);
+				continue;
+			}
+			long count = other.count;
+			if (other != own && (count & 1) != 0) {
+				while (other.count == count)
+					Thread.yield();
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package filesystem;
+
+import java.util.List;
+
+/**
+ * An interface of listeners to the changes below a watched directory, see Directory.watch.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+public interface ChangeListener {
+
+	/**
+	 * Handles the given events, in the order in which their first changes happened.
+	 * @note	Called on a delivery thread, never by the thread that made the changes.
+	 * 			Calls for the same watch never overlap, calls for different watches can.
+	 */
+	void changed(List<ChangeEvent> events);
+}
@@ -1,6 +1,24 @@
 package filesystem;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import be.kuleuven.cs.som.annotate.*;
 
 /**
@@ -49,7 +67,10 @@ public class Directory extends Item {
      *          | new.getModificationTime() == null
 	 */
 	public Directory(Directory dir, String name, boolean writable) {
-		super(dir,name,writable);
+		super(name,writable);
+		//the directory is only added to its parent once its fields are initialized
+		if (dir != null)
+			move(dir);
 	}
 	
 	/**
@@ -95,11 +116,35 @@ public class Directory extends Item {
 		this(null,name, true);
 	}
 	
+	/**
+	 * Initialize a new root directory with the given state, as read from a snapshot.
+	 * 
+	 * @param 	name
+	 * 			the encoded name of the new directory.
+	 * @param 	flags
+	 * 			the flags of the new directory.
+	 * @param 	creationTime
+	 * 			the creation time of the new directory.
+	 * @param 	modificationTime
+	 * 			the modification time of the new directory.
+	 * @param 	isCaseInsensitiveUnique
+	 * 			whether the names of the children of the new directory must be unique
+	 * 			when cases are ignored.
+	 * @effect	The new directory is initialized with the given state.
+	 * 			| super(name, flags, creationTime, modificationTime)
+	 */
+	@Raw
+	Directory(long[] name, byte flags, long creationTime, long modificationTime, boolean isCaseInsensitiveUnique) {
+		super(name, flags, creationTime, modificationTime);
+		this.isCaseInsensitiveUnique = isCaseInsensitiveUnique;
+	}
+	
 
 	
     /**
      * Deletes this object and its associations
-     * @effect	This item is deleted from its directory and the item's directory is set to null
+     * @effect	This item is deleted from its directory and the item's directory is set to null,
+     * 			once this directory is checked to be empty under its lock.
      * 			| ((Item)this).delete()
      * @throws	DirectoryNotEmptyException
      * 			Throws this exception when the current directory is not empty.
@@ -108,12 +153,129 @@ public class Directory extends Item {
      */
 	@Override
 	public void delete () throws DirectoryNotEmptyException, NotWritableException {
-		if (this.getNbItems() > 0)
-			throw new DirectoryNotEmptyException(this);
-		
+		// a copy that still shares its children stops sharing them, so it is no longer registered
+		if (source != null)
+			load();
 		super.delete();
 	}
-	
+
+	/**
+	 * Variable registering the number of items below a directory from which
+	 * deleteRecursively releases them in parallel.
+	 */
+	static final int PARALLEL_RELEASE_THRESHOLD = 1 << 16;
+
+	/**
+	 * Deletes this directory together with all items below it.
+	 * @post	This directory is removed from its directory in a single change, and all
+	 * 			items below it are detached as well: every item is a root item, and every
+	 * 			directory is empty and has the time of the deletion as its modification time.
+	 * 			| new.getDirectory() == null && new.getNbItems() == 0
+	 * 			| for each item in old.stream(): (new item).getDirectory() == null
+	 * @throws	NotWritableException
+	 * 			Throws this exception, without deleting anything, when this directory or
+	 * 			any item below it is not writable. The exception reports the first item
+	 * 			that is not writable.
+	 * 			| !isWritable() || stream().anyMatch(item -> !item.isWritable())
+	 * @throws	EvictedException(this)
+	 * 			Throws this exception, without deleting anything, when this directory has been
+	 * 			unloaded from the tree of a lazy snapshot.
+	 * 			| isEvicted()
+	 * @note	The writability of the whole subtree is checked before anything is changed,
+	 * 			while the subtree is locked, so the deletion happens completely or not at all.
+	 * 			Only the directory of this directory is updated, the items below are released
+	 * 			without updating the aggregates and indexes of the directories they are in,
+	 * 			in parallel from PARALLEL_RELEASE_THRESHOLD items. Directories below this one
+	 * 			whose children are not loaded are loaded first.
+	 * @note	Watches report the removal of this directory, and the removal of every item
+	 * 			below it only when this directory or a directory below it is watched.
+	 */
+	public void deleteRecursively() throws NotWritableException {
+		long sequence = 0;
+		Lock structure = structureLock.writeLock();
+		structure.lock();
+		try {
+			// the structure lock keeps the subtree fixed while it is collected and locked
+			materializeCopies(this);
+			ArrayList<Directory> dirs = new ArrayList<Directory>();
+			ArrayList<Item> items = new ArrayList<Item>();
+			dirs.add(this);
+			items.add(this);
+			for (int i = 0; i < dirs.size(); i++) {
+				Directory dir = dirs.get(i);
+				if (!dir.isLoaded())
+					dir.load();
+				dir.materializeCopies();
+				for (Item child : dir.children) {
+					items.add(child);
+					if (child instanceof Directory)
+						dirs.add((Directory)child);
+				}
+			}
+			Directory parent = getDirectory();
+			ArrayList<Directory> toLock = new ArrayList<Directory>(dirs);
+			toLock.add(parent);
+			List<Directory> locked = lockInOrder(toLock);
+			try {
+				if (evicted)
+					throw new EvictedException(this);
+				for (Item item : items) {
+					if (!item.isWritable())
+						throw new NotWritableException(item);
+				}
+				long time = System.currentTimeMillis();
+				if (parent != null) {
+					parent.removeChild(this);
+					sequence = Journal.logDelete(this, parent);
+					Watch.moved(this, parent, null);
+				} else {
+					// a root directory stays, so the deletion of its children is recorded
+					for (Item child : children)
+						sequence = Math.max(sequence, Journal.logDelete(child, this));
+				}
+				if (Watch.isWatchedWithin(this)) {
+					for (int i = 1; i < items.size(); i++)
+						Watch.moved(items.get(i), items.get(i).getDirectory(), null);
+				}
+				for (Directory dir : dirs)
+					dir.setModificationTime(time);
+				for (Directory dir : dirs)
+					dir.typeIndex = null;
+				if (items.size() < PARALLEL_RELEASE_THRESHOLD) {
+					for (Item item : items)
+						item.release();
+				} else {
+					ForkJoinPool.commonPool().invoke(new ReleaseTask(items, 0, items.size()));
+				}
+			} finally {
+				unlockAll(locked);
+			}
+		} finally {
+			structure.unlock();
+		}
+		Journal.awaitDurable(sequence);
+	}
+
+	/**
+	 * Makes this directory an empty root directory, while the subtree it belongs to is
+	 * deleted at once. The caller must hold the write lock of the structure, of this
+	 * directory and of its directory.
+	 * @post	| new.getNbItems() == 0 && new.getTotalSize() == 0 && new.getTotalNbFiles() == 0
+	 * @note	The type index and the modification time of this directory are set by the caller.
+	 */
+	@Override
+	void release() {
+		super.release();
+		unshare();
+		children = Collections.emptyList();
+		childrenByName.clear();
+		childrenByFoldedName.clear();
+		pathCache = null;
+		region = null;
+		totalSize = 0;
+		totalNbFiles = 0;
+	}
+
 	
 	
 	
@@ -123,15 +285,573 @@ public class Directory extends Item {
      * Children
      **********************************************************/
 	
-	ArrayList<Item> children = new ArrayList<Item>();
+	/**
+	 * Variable referencing an immutable snapshot of the children of this directory,
+	 * sorted on their names.
+	 * @note	The snapshot is never changed, changes to the children replace it
+	 * 			with a new snapshot. It can be read without any lock.
+	 */
+	volatile List<Item> children = Collections.emptyList();
+	
+	/**
+	 * Variable referencing the value of children of a directory whose children are not loaded.
+	 */
+	static final List<Item> UNLOADED = Collections.unmodifiableList(new ArrayList<Item>(0));
+	
+	/**
+	 * Replaces the snapshot of the children of this directory with the given list.
+	 * The caller must hold the write lock of this directory and may not change the list afterwards.
+	 */
+	private void setChildren(ArrayList<Item> children) {
+		this.children = Collections.unmodifiableList(children);
+	}
+	
+	/**
+	 * Variable referencing the region of a lazy snapshot that holds the records of the
+	 * children of this directory, null if this directory was not loaded from a lazy snapshot
+	 * or its children have changed since.
+	 * @note	The region is never null while the children are not loaded, unless they are
+	 * 			shared with another directory.
+	 */
+	volatile SnapshotRegion region = null;
+	
+	/**
+	 * Variable referencing the directory whose children the children of this directory are
+	 * a copy of, as long as they are shared and not loaded, null otherwise.
+	 */
+	private volatile Directory source = null;
+	
+	/**
+	 * A class of weak references to copies that share the children of a directory.
+	 */
+	private static final class CopyReference extends WeakReference<Directory> {
+		
+		/**
+		 * Variable referencing the directory whose children the copy shares.
+		 */
+		private final Directory source;
+		
+		private CopyReference(Directory copy, Directory source) {
+			super(copy, releasedCopies);
+			this.source = source;
+		}
+	}
+	
+	/**
+	 * Variable referencing the reference to this directory in the copies of its source,
+	 * as long as its children are shared.
+	 */
+	private CopyReference sharing = null;
+	
+	/**
+	 * Variable referencing the copies that share the children of this directory, null if there are none.
+	 * @note	The array is never changed, it is replaced under COPIES.
+	 * @note	The copies are referenced weakly: a copy that is no longer used is forgotten
+	 * 			without ever copying the children it shares.
+	 */
+	private volatile CopyReference[] copies = null;
+	
+	/**
+	 * Variable referencing the queue of the references to copies that are no longer used.
+	 */
+	private static final ReferenceQueue<Directory> releasedCopies = new ReferenceQueue<Directory>();
+	
+	/**
+	 * Variable referencing the lock that guards the copies of all directories.
+	 * No other lock is taken while it is held.
+	 */
+	private static final Object COPIES = new Object();
+	
+	/**
+	 * Variable registering the number of copies that share the children of a directory,
+	 * so that changes do not look for copies while there are none.
+	 */
+	private static volatile int nbSharing = 0;
+	
+	/**
+	 * Returns a copy of this directory that shares its children: the children are only
+	 * copied when they are needed or before the items below this directory change.
+	 * The caller must hold the structure lock, and may not hold any lock of a directory.
+	 */
+	@Override
+	Directory copy(long[] name, long creationTime, long modificationTime) {
+		Directory copy = new Directory(name, flags, creationTime, modificationTime, isCaseInsensitiveUnique());
+		copy.share(this);
+		return copy;
+	}
+	
+	/**
+	 * Registers that the children of this new directory are shared with the given directory.
+	 * @post	The children of this directory are not loaded, they are copied from the given
+	 * 			directory when they are needed.
+	 * @post	The aggregates of this directory are those of the given directory.
+	 * @note	Single items are changed without the structure lock, see Item.lockDirectoryToChange.
+	 * 			The copy is registered before the aggregates are read, and the changes that
+	 * 			may have missed it are waited for in between.
+	 */
+	private void share(Directory source) {
+		this.source = source;
+		this.children = UNLOADED;
+		forgetReleasedCopies();
+		synchronized (COPIES) {
+			sharing = new CopyReference(this, source);
+			CopyReference[] current = source.copies;
+			CopyReference[] updated = current == null ? new CopyReference[1] : Arrays.copyOf(current, current.length + 1);
+			updated[updated.length - 1] = sharing;
+			source.copies = updated;
+			nbSharing++;
+		}
+		ChangeGuard.awaitChanges();
+		this.totalSize = source.getTotalSize();
+		this.totalNbFiles = source.getTotalNbFiles();
+		for (int id = 0; id < TypeRegistry.getNbTypes(); id++) {
+			long count = source.peekCountByType(id);
+			if (count > 0)
+				getTypeIndex().update(id, count, this, false);
+		}
+	}
+	
+	/**
+	 * Registers that the children of this directory are no longer shared.
+	 * @note	A copy whose children are not loaded must be loaded or emptied as well.
+	 */
+	void unshare() {
+		synchronized (COPIES) {
+			if (sharing == null)
+				return;
+			unregister(sharing);
+			sharing = null;
+			this.source = null;
+		}
+	}
+	
+	/**
+	 * Removes the given reference from the copies of its source, if it is registered.
+	 * The caller must hold COPIES.
+	 */
+	private static void unregister(CopyReference reference) {
+		CopyReference[] current = reference.source.copies;
+		if (current == null)
+			return;
+		ArrayList<CopyReference> remaining = new ArrayList<CopyReference>(Arrays.asList(current));
+		if (remaining.remove(reference)) {
+			reference.source.copies = remaining.isEmpty() ? null : remaining.toArray(new CopyReference[remaining.size()]);
+			nbSharing--;
+		}
+	}
+	
+	/**
+	 * Unregisters the copies that are no longer used.
+	 */
+	private static void forgetReleasedCopies() {
+		CopyReference reference = (CopyReference)releasedCopies.poll();
+		while (reference != null) {
+			synchronized (COPIES) {
+				unregister(reference);
+			}
+			reference = (CopyReference)releasedCopies.poll();
+		}
+	}
+	
+	/**
+	 * Returns copies of the children of the given directory, attached to this directory.
+	 * The copies of subdirectories share their children in turn.
+	 */
+	private ArrayList<Item> copyChildren(Directory source) {
+		List<Item> originals = source.getChildren();
+		ArrayList<Item> copied = new ArrayList<Item>(originals.size());
+		for (Item original : originals) {
+			Item copy = original.copy(original.getEncodedName(), original.getCreationMillis(),
+					original.getModificationMillis());
+			copy.attachLoaded(this);
+			copied.add(copy);
+		}
+		return copied;
+	}
+	
+	/**
+	 * Copies the children of all copies that share the children of this directory.
+	 * The caller may not hold any lock of a directory.
+	 */
+	void materializeCopies() {
+		CopyReference[] copies = this.copies;
+		if (copies != null) {
+			for (CopyReference reference : copies) {
+				Directory copy = reference.get();
+				if (copy != null) {
+					copy.load();
+				} else {
+					synchronized (COPIES) {
+						unregister(reference);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Copies the children of all copies that share the children of the given directory or
+	 * of one of its ancestors, before the items below the given directory change.
+	 * The caller may not hold any lock of a directory.
+	 * @note	The copies are materialized from the root down: copying the children of an
+	 * 			ancestor makes new copies that share the children of the next ancestor.
+	 * 			New copies can be made in the mean time, unless the caller holds the structure
+	 * 			lock, so changes check isShared again once their directory is locked.
+	 */
+	static void materializeCopies(Directory dir) {
+		if (nbSharing == 0 || dir == null)
+			return;
+		forgetReleasedCopies();
+		ArrayList<Directory> path = new ArrayList<Directory>();
+		for (Directory ancestor = dir; ancestor != null; ancestor = ancestor.getDirectory())
+			path.add(ancestor);
+		for (int i = path.size() - 1; i >= 0; i--)
+			path.get(i).materializeCopies();
+	}
+	
+	/**
+	 * Checks whether copies share the children of the given directory or of one of its ancestors.
+	 * @note	The ancestors are checked from the root down: a copy that is materialized
+	 * 			registers the copies of the next level before it is no longer shared itself.
+	 */
+	static boolean isShared(Directory dir) {
+		if (nbSharing == 0 || dir == null)
+			return false;
+		forgetReleasedCopies();
+		ArrayList<Directory> path = new ArrayList<Directory>();
+		for (Directory ancestor = dir; ancestor != null; ancestor = ancestor.getDirectory())
+			path.add(ancestor);
+		for (int i = path.size() - 1; i >= 0; i--) {
+			if (path.get(i).copies != null)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks whether the children of this directory are loaded.
+	 */
+	boolean isLoaded() {
+		return children != UNLOADED;
+	}
+	
+	/**
+	 * Loads the children of this directory from its lazy snapshot, or copies them from the
+	 * directory it shares them with, if they are not loaded.
+	 * The caller may not hold any lock of a directory.
+	 * @throws	UncheckedIOException
+	 * 			Throws this exception when the records of the children are not valid.
+	 */
+	void load() throws UncheckedIOException {
+		// the structure lock keeps the ancestry of this directory fixed while the children are attached
+		Lock structure = structureLock.readLock();
+		structure.lock();
+		try {
+			lock.writeLock().lock();
+			try {
+				if (isLoaded())
+					return;
+				SnapshotRegion region = this.region;
+				Directory source = this.source;
+				ArrayList<Item> loaded;
+				if (source != null) {
+					loaded = copyChildren(source);
+				} else {
+					try {
+						loaded = Snapshot.readChildren(region);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				for (Item child : loaded) {
+					childrenByName.add(child);
+					childrenByFoldedName.add(child);
+					// the items below an unloaded directory can not be changed either
+					child.evicted = evicted;
+				}
+				// the numbers of files per type are known, only the carriers are registered
+				for (Item child : loaded) {
+					if (child instanceof File && ((File)child).getTypeId() != -1) {
+						getTypeIndex().update(((File)child).getTypeId(), 0, child, true);
+					} else if (child instanceof Directory) {
+						for (int id = 0; id < TypeRegistry.getNbTypes(); id++) {
+							if (((Directory)child).peekCountByType(id) > 0)
+								getTypeIndex().update(id, 0, child, true);
+						}
+					}
+				}
+				setChildren(loaded);
+				if (source != null)
+					unshare();
+				else
+					region.snapshot.register(region);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} finally {
+			structure.unlock();
+		}
+	}
+	
+	/**
+	 * Locks the given lock of this directory, after loading the children of this directory
+	 * if they are not loaded. The children stay loaded as long as the lock is held.
+	 * @param 	lock
+	 * 			the read lock or the write lock of this directory
+	 * @note	The caller may not hold any lock of a directory, unless the children of this
+	 * 			directory are loaded and stay loaded.
+	 */
+	private void lockLoaded(Lock lock) {
+		lock.lock();
+		while (!isLoaded()) {
+			lock.unlock();
+			load();
+			lock.lock();
+		}
+		SnapshotRegion region = this.region;
+		if (region != null && !region.isReferenced)
+			region.isReferenced = true;
+	}
+	
+	/**
+	 * Registers that the children of this directory no longer match the records they
+	 * were loaded from, and neither do the aggregates of its ancestors.
+	 * The caller must hold the write lock of this directory.
+	 * @note	A directory that has changed has ancestors that have changed, so marking
+	 * 			stops at the first ancestor that has changed already.
+	 */
+	void markChanged() {
+		for (Directory dir = this; dir != null && dir.region != null; dir = dir.getDirectory())
+			dir.region = null;
+	}
+	
+	/**
+	 * Registers the given region of a lazy snapshot as the records of the children of this
+	 * directory, while loading a tree that is not yet shared with other threads.
+	 * @param 	region
+	 * 			the region with the records of the children
+	 * @param 	totalSize
+	 * 			the total size of the files below this directory
+	 * @param 	totalNbFiles
+	 * 			the number of files below this directory
+	 * @param 	counts
+	 * 			the number of files below this directory for every type identifier
+	 * @post	The children of this directory are not loaded, they are loaded from the given
+	 * 			region when they are needed.
+	 */
+	void setUnloaded(SnapshotRegion region, long totalSize, long totalNbFiles, long[] counts) {
+		this.region = region;
+		this.children = UNLOADED;
+		this.totalSize = totalSize;
+		this.totalNbFiles = totalNbFiles;
+		for (int id = 0; id < counts.length; id++) {
+			if (counts[id] > 0)
+				getTypeIndex().update(id, counts[id], this, false);
+		}
+	}
+	
+	/**
+	 * Unloads the children of this directory and all items below it, when they match
+	 * the records of the lazy snapshot they have been loaded from.
+	 * @return	Returns true if the children have been unloaded. Returns false, without changing
+	 * 			anything, if they are not loaded, if this directory is not part of the tree of a
+	 * 			lazy snapshot, if the items below it have changed since they have been loaded,
+	 * 			or if they are part of the tree of a journal.
+	 * @post	The children are loaded again from the snapshot when they are needed.
+	 * @post	The items that were below this directory are no longer part of the tree:
+	 * 			the children that were loaded become root items. These items can no longer
+	 * 			be changed, looking them up again gives the items loaded in their place.
+	 * 			| for each item in old.stream(): item != this ==> (new item).isEvicted()
+	 * @note	Changing an item that has been unloaded throws an EvictedException, so a
+	 * 			change through a reference that is still held is never lost silently.
+	 */
+	public boolean evict() {
+		SnapshotRegion region = this.region;
+		if (region == null || !isLoaded() || journalId >= 0 || getRoot() != region.snapshot.getRoot())
+			return false;
+		Lock structure = structureLock.writeLock();
+		structure.lock();
+		try {
+			// lock all loaded directories below this one, so nothing changes below it
+			ArrayList<Directory> dirs = new ArrayList<Directory>();
+			dirs.add(this);
+			for (int i = 0; i < dirs.size(); i++) {
+				for (Item child : dirs.get(i).children) {
+					if (child instanceof Directory)
+						dirs.add((Directory)child);
+				}
+			}
+			List<Directory> locked = lockInOrder(dirs);
+			try {
+				if (this.region != region || !isLoaded() || Watch.isWatchedBelow(this))
+					return false;
+				// the items are marked before they are detached, so a change that finds an item
+				// detached finds it marked as well
+				for (Directory dir : dirs) {
+					for (Item child : dir.children)
+						child.evicted = true;
+				}
+				List<Item> evicted = children;
+				children = UNLOADED;
+				childrenByName.clear();
+				childrenByFoldedName.clear();
+				if (typeIndex != null)
+					typeIndex.clearCarriers();
+				pathCache = null;
+				if (getDirectory() != null)
+					getDirectory().invalidatePaths(getEncodedName());
+				for (Item child : evicted) {
+					child.dir = null;
+					child.updateAncestry();
+				}
+				return true;
+			} finally {
+				unlockAll(locked);
+			}
+		} finally {
+			structure.unlock();
+		}
+	}
+	
+	/**
+	 * Variable referencing the lock that guards the children of this directory.
+	 * @note	Lookups by name in this directory take the read lock, changes to the children
+	 * 			of this directory take the write lock. When several directories are locked
+	 * 			at once, their locks are taken in the order of their identifiers.
+	 */
+	final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/**
+	 * Variable registering the next identifier for a new directory.
+	 */
+	private static final AtomicLong nextId = new AtomicLong();
+	
+	/**
+	 * Variable registering a unique identifier for this directory, 
+	 * which gives the order in which the locks of directories are taken.
+	 */
+	private final long id = nextId.getAndIncrement();
+	
+	/**
+	 * Locks the write locks of the given directories in the order of their identifiers.
+	 * @param 	dirs
+	 * 			the directories to lock, possibly containing null and duplicates
+	 * @return	Returns the locked directories, in the order in which they are locked.
+	 */
+	static List<Directory> lockInOrder(Collection<Directory> dirs) {
+		ArrayList<Directory> sorted = new ArrayList<Directory>(dirs.size());
+		for (Directory dir : dirs) {
+			if (dir != null)
+				sorted.add(dir);
+		}
+		Collections.sort(sorted, new Comparator<Directory>() {
+			@Override
+			public int compare(Directory dir1, Directory dir2) {
+				return Long.compare(dir1.id, dir2.id);
+			}
+		});
+		ArrayList<Directory> locked = new ArrayList<Directory>(sorted.size());
+		for (Directory dir : sorted) {
+			if (locked.isEmpty() || locked.get(locked.size()-1) != dir) {
+				dir.lock.writeLock().lock();
+				locked.add(dir);
+			}
+		}
+		return locked;
+	}
+	
+	/**
+	 * Unlocks the write locks of the given directories.
+	 */
+	static void unlockAll(List<Directory> locked) {
+		for (int i = locked.size()-1; i >= 0; i--)
+			locked.get(i).lock.writeLock().unlock();
+	}
+	
+	/**
+	 * Variable referencing an index of the children of this directory by name.
+	 * @note	This index holds exactly the same items as children and is kept
+	 * 			up to date by addChild and removeChild.
+	 */
+	private final NameIndex childrenByName = new NameIndex(false);
+	
+	/**
+	 * Variable referencing an index of the children of this directory by name, ignoring cases.
+	 * @note	This index holds exactly the same items as children and is kept
+	 * 			up to date by addChild and removeChild.
+	 */
+	private final NameIndex childrenByFoldedName = new NameIndex(true);
+	
+	/**
+	 * Variable registering whether the names of the children of this directory
+	 * must be unique when cases are ignored.
+	 */
+	private volatile boolean isCaseInsensitiveUnique = false;
+	
+	/**
+	 * Checks whether the names of the children of this directory must be unique when cases are ignored.
+	 */
+	@Basic
+	public boolean isCaseInsensitiveUnique() {
+		return isCaseInsensitiveUnique;
+	}
+	
+	/**
+	 * Sets whether the names of the children of this directory must be unique when cases are ignored.
+	 * @param 	isCaseInsensitiveUnique
+	 * 			The new flag
+	 * @post	The given flag is registered for this directory.
+	 * 			| new.isCaseInsensitiveUnique() == isCaseInsensitiveUnique
+	 * @throws 	AlreadyExistsException
+	 * 			Throws this error when the flag is set while two children of this directory
+	 * 			have names that only differ in cases.
+	 * @throws	EvictedException(this)
+	 * 			Throws this error when this directory has been unloaded from the tree of a lazy snapshot.
+	 * 			| isEvicted()
+	 */
+	public void setCaseInsensitiveUnique(boolean isCaseInsensitiveUnique) throws AlreadyExistsException {
+		long sequence;
+		Lock structure = structureLock.readLock();
+		structure.lock();
+		try {
+			materializeCopies(getDirectory());
+			lockLoaded(lock.writeLock());
+			try {
+				if (evicted)
+					throw new EvictedException(this);
+				if (isCaseInsensitiveUnique) {
+					for (Item child : children) {
+						if (childrenByFoldedName.count(child.getEncodedName(), child) > 0)
+							throw new AlreadyExistsException(this, child);
+					}
+				}
+				this.isCaseInsensitiveUnique = isCaseInsensitiveUnique;
+				markChanged();
+				sequence = Journal.logCaseInsensitiveUnique(this);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} finally {
+			structure.unlock();
+		}
+		Journal.awaitDurable(sequence);
+	}
 	
 	/**
 	 * Returns the number of items in this directory.
 	 * @return Returns the number of items in this directory.
+	 * @note	The children are not loaded to count them.
 	 */
 	public int getNbItems() {
-		return children.size();
-		
+		List<Item> children = this.children;
+		if (children != UNLOADED)
+			return children.size();
+		Directory source = this.source;
+		if (source != null)
+			return source.getNbItems();
+		SnapshotRegion region = this.region;
+		// the children may have been copied in the mean time
+		return region != null ? region.nbChildren : this.children.size();
 	}
 		
 	/**
@@ -142,7 +862,14 @@ public class Directory extends Item {
 	 * @return 	Returns 0 when the given item is not in this directory.
 	 */
 	public int getIndexOf(Item item) {
-		return this.children.indexOf(item)+1;
+		lockLoaded(lock.readLock());
+		try {
+			if (item == null || !hasAsItem(item))
+				return 0;
+			return binarySearch(0, this.getNbItems()-1, item.getEncodedName())+1;
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 	
 	
@@ -156,7 +883,7 @@ public class Directory extends Item {
 	 * 			Throws an exception when the item at the given index does not exist.
 	 */
 	public Item getItemAt(int index) throws IndexOutOfBoundsException {
-		return children.get(index-1);
+		return getChildren().get(index-1);
 	}
 	
 	
@@ -167,13 +894,12 @@ public class Directory extends Item {
 	 * @param 	to	
 	 * 			the index to where to look
 	 * @param 	name
-	 * 			the name to look for
-	 * @param 	matchCase
-	 * 			whether we need to take care of cases or not
+	 * 			the encoded name to look for
 	 * @return	Returns the index of the item with the given name.
 	 * 			Returns -1 when the given name is not found.
+	 * @note	The caller must hold the lock of this directory.
 	 */
-	private int binarySearch (int from, int to, String name) {
+	int binarySearch (int from, int to, long[] name) {
 		if (to >= from) {
 	        int mid = from + (to - from) / 2;
 	        Item midItem = children.get(mid);
@@ -205,17 +931,43 @@ public class Directory extends Item {
 	 */
 	@Basic
 	public Item getItem (String name) {
-		int index = binarySearch(0, this.getNbItems()-1, name);
-		return index == -1 ? null : children.get(index);
+		long start = Metrics.start();
+		try {
+			return findItem(name);
+		} finally {
+			Metrics.stop(Metrics.Operation.GET_ITEM, start);
+		}
+	}
+	
+	/**
+	 * Searches for an item with the given name, like getItem, without reporting
+	 * the lookup to the metrics.
+	 */
+	private Item findItem (String name) {
+		lockLoaded(lock.readLock());
+		try {
+			return childrenByName.get(name);
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 	
 	/**
 	 * Returns the children of the current directory
-	 * @return	Returns the children of the current directory as an ArrayList object
+	 * @return	Returns an immutable snapshot of the children of the current directory,
+	 * 			later changes to this directory are not reflected in it.
 	 */
 	@Basic
-	public ArrayList<Item> getChildren() {
-		return this.children;
+	public List<Item> getChildren() {
+		List<Item> children = this.children;
+		while (children == UNLOADED) {
+			load();
+			children = this.children;
+		}
+		SnapshotRegion region = this.region;
+		if (region != null && !region.isReferenced)
+			region.isReferenced = true;
+		return children;
 	}
 	
 	/*public void test () {
@@ -252,6 +1004,78 @@ public class Directory extends Item {
 	}*/
 	
 	
+	/**
+	 * Variable referencing the cache of paths resolved from this directory,
+	 * null as long as no path has been resolved.
+	 */
+	private volatile PathCache pathCache = null;
+	
+	/**
+	 * Returns the item at the given path relative to this directory.
+	 * @param 	path
+	 * 			The names of the directories to pass and the name of the item,
+	 * 			separated by slashes.
+	 * @return	Returns the item at the given path.
+	 * 			Returns null when there is no such item, or when the path
+	 * 			contains an empty name.
+	 * @note	Resolved paths are cached. The paths through an item are removed from
+	 * 			the cache when that item is renamed, moved or deleted.
+	 */
+	public Item resolve (String path) {
+		PathCache cache = pathCache;
+		if (cache == null) {
+			synchronized (this) {
+				if (pathCache == null)
+					pathCache = new PathCache();
+				cache = pathCache;
+			}
+		}
+		Item item = cache.get(path);
+		if (item != null)
+			return item;
+		long version = cache.getVersion();
+		
+		item = this;
+		int start = 0;
+		while (start <= path.length()) {
+			int end = path.indexOf('/', start);
+			if (end == -1)
+				end = path.length();
+			if (end == start || !(item instanceof Directory))
+				return null;
+			item = ((Directory)item).findItem(path.substring(start, end));
+			if (item == null)
+				return null;
+			start = end+1;
+		}
+		cache.put(path, item, version);
+		return item;
+	}
+	
+	/**
+	 * Removes the paths through the given child from the path caches 
+	 * of this directory and its ancestors.
+	 * @param 	childName
+	 * 			The encoded name under which the child has been resolved.
+	 * @note	The paths are only built when this directory or one of its ancestors
+	 * 			has a path cache.
+	 */
+	private void invalidatePaths (long[] childName) {
+		Directory cached = this;
+		while (cached != null && cached.pathCache == null)
+			cached = cached.getDirectory();
+		if (cached == null)
+			return;
+		String path = NameCodec.decode(childName);
+		for (Directory ancestor = this; ancestor != null; ancestor = ancestor.getDirectory()) {
+			PathCache cache = ancestor.pathCache;
+			if (cache != null)
+				cache.invalidate(path);
+			if (ancestor.getDirectory() != null)
+				path = ancestor.getName() + '/' + path;
+		}
+	}
+	
 	/**
 	 * Checks whether an item already exists within this directory, only check one level below. 
 	 * @param item
@@ -262,7 +1086,12 @@ public class Directory extends Item {
 	 */
 	
 	public boolean hasAsItem (Item item) {
-		return (this.getItem(item.getName()) == item);
+		lockLoaded(lock.readLock());
+		try {
+			return childrenByName.get(item.getEncodedName()) == item;
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 	
 	/**
@@ -275,11 +1104,34 @@ public class Directory extends Item {
 	 * 			Returns true when the file doesn't exist.
 	 */
 	public boolean exists (String name) {
-		for (Item child : children) {
-			if (child.getName().toLowerCase().equals(name.toLowerCase()))
-				return true;
+		lockLoaded(lock.readLock());
+		try {
+			return childrenByFoldedName.contains(name);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Checks whether the given item can be a child of this directory under the given name.
+	 * @param 	name
+	 * 			The name to check
+	 * @param 	child
+	 * 			The item that would get the given name, possibly null
+	 * @return	Returns false when an item in this directory has the given name.
+	 * 			Returns false when the names of the children must be unique when cases are ignored
+	 * 			and an item other than the given child has the given name, ignoring cases.
+	 * 			Returns true otherwise.
+	 */
+	boolean canHaveAsChildName (String name, Item child) {
+		lockLoaded(lock.readLock());
+		try {
+			if (childrenByName.contains(name))
+				return false;
+			return !isCaseInsensitiveUnique() || childrenByFoldedName.count(name, child) == 0;
+		} finally {
+			lock.readLock().unlock();
 		}
-		return false;
 	}
 	
 	/**
@@ -294,7 +1146,7 @@ public class Directory extends Item {
 	 * 			Returns -1 when the name already exists in the current directory
 	 */
 	
-	private int getInsertIndex (int from, int to, String name) {
+	private int getInsertIndex (int from, int to, long[] name) {
 		if (to<from) {
 			return 0;
 		}
@@ -342,17 +1194,293 @@ public class Directory extends Item {
 	 * 			Throws this error when you try to add a child directory that is an ancestor 
 	 * 			of the current directory
 	 * @throws 	AlreadyExistsException
-	 * 			Throws this error when there already exists a child with the same name.
+	 * 			Throws this error when there already exists a child with the same name,
+	 * 			or with the same name ignoring cases if this directory is case insensitive unique.
+	 * @throws	EvictedException(this)
+	 * 			Throws this error when this directory has been unloaded from the tree of a lazy snapshot.
+	 * 			| isEvicted()
 	 */
 	protected void addChild(Item child) throws IsOwnAncestorException, AlreadyExistsException {
-		int insertIndex = getInsertIndex(0, getNbItems()-1, child.getName());
-		if (insertIndex == -1) {
-			throw new AlreadyExistsException(this, child);
-		} else if (child.getClass() == Directory.class && this.isDirectOrIndirectSubdirectoryOf((Directory)child)) {
-			throw new IsOwnAncestorException(child);
+		long start = Metrics.start();
+		lock.writeLock().lock();
+		try {
+			if (evicted)
+				throw new EvictedException(this);
+			int insertIndex = getInsertIndex(0, getNbItems()-1, child.getEncodedName());
+			if (insertIndex == -1 || (isCaseInsensitiveUnique() && childrenByFoldedName.contains(child.getEncodedName()))) {
+				throw new AlreadyExistsException(this, child);
+			} else if (child == this || (child.getClass() == Directory.class && this.isDirectOrIndirectSubdirectoryOf((Directory)child))) {
+				throw new IsOwnAncestorException(child);
+			}
+			ArrayList<Item> newChildren = new ArrayList<Item>(getNbItems()+1);
+			newChildren.addAll(children);
+			newChildren.add(insertIndex, child);
+			setChildren(newChildren);
+			childrenByName.add(child);
+			childrenByFoldedName.add(child);
+			updateAggregates(getTotalSize(child), getTotalNbFiles(child));
+			updateTypeIndex(child, true);
+			this.setModificationTime();
+			markChanged();
+		} finally {
+			lock.writeLock().unlock();
+			Metrics.stop(Metrics.Operation.ADD_CHILD, start);
+		}
+	}
+	
+	/**
+	 * Moves all the given items into this directory at once.
+	 * @param 	items
+	 * 			the items to be moved into this directory
+	 * @post	Every given item is a child of this directory and has this directory
+	 * 			as its directory, the items are removed from their old directories.
+	 * @effect	The modification time of this directory is updated once.
+	 * 			| setModificationTime()
+	 * @throws 	ItemsConflictException
+	 * 			Throws this error, without moving any item, when some of the given items
+	 * 			can not be added. These are the items that have the same name as a child
+	 * 			of this directory or as an other given item, and the items that are this
+	 * 			directory or one of its ancestors.
+	 * @throws	EvictedException
+	 * 			Throws this error, without moving any item, when this directory or one of the
+	 * 			given items has been unloaded from the tree of a lazy snapshot.
+	 */
+	public void addAll(Collection<Item> items) throws ItemsConflictException {
+		ArrayList<Item> batch = new ArrayList<Item>(items);
+		Collections.sort(batch, new Comparator<Item>() {
+			@Override
+			public int compare(Item item1, Item item2) {
+				return item1.compareName(item2);
+			}
+		});
+		
+		long sequence;
+		Lock structure = structureLock.readLock();
+		structure.lock();
+		try {
+			while (true) {
+				boolean hasItemsBelow = false;
+				for (Item item : batch)
+					hasItemsBelow = hasItemsBelow || item.hasItemsBelow();
+				if (hasItemsBelow && structure != structureLock.writeLock()) {
+					//directories with items below them are moved under the write lock, see structureLock
+					structure.unlock();
+					structure = structureLock.writeLock();
+					structure.lock();
+				}
+				if (!isLoaded())
+					load();
+				ArrayList<Directory> oldDirs = new ArrayList<Directory>(batch.size());
+				for (Item item : batch)
+					oldDirs.add(item.dir);
+				Set<Directory> changed = Collections.newSetFromMap(new IdentityHashMap<Directory, Boolean>());
+				changed.add(this);
+				changed.addAll(oldDirs);
+				for (Directory dir : changed)
+					materializeCopies(dir);
+				ArrayList<Directory> dirs = new ArrayList<Directory>(oldDirs);
+				dirs.add(this);
+				boolean isExclusive = structure == structureLock.writeLock();
+				for (Item item : batch) {
+					if (item instanceof Directory && !isExclusive)
+						dirs.add((Directory)item);
+				}
+				List<Directory> locked = lockInOrder(dirs);
+				try {
+					boolean isMoved = false;
+					for (int i = 0; i < batch.size(); i++) {
+						isMoved = isMoved || batch.get(i).dir != oldDirs.get(i)
+								|| (!isExclusive && batch.get(i).hasItemsBelow());
+					}
+					if (isMoved || !isLoaded())
+						continue; //some item has been moved or filled, or this directory unloaded in the mean time
+					sequence = doAddAll(batch, oldDirs);
+					break;
+				} finally {
+					unlockAll(locked);
+				}
+			}
+		} finally {
+			structure.unlock();
+		}
+		Journal.awaitDurable(sequence);
+	}
+	
+	/**
+	 * Moves all the given items, sorted on their names, from the given old directories
+	 * into this directory. The caller must hold the locks of all these directories.
+	 * @return	Returns the sequence number of the last journal record of the move, 0 if none.
+	 */
+	private long doAddAll(ArrayList<Item> batch, ArrayList<Directory> oldDirs) throws ItemsConflictException {
+		if (evicted)
+			throw new EvictedException(this);
+		for (Item item : batch) {
+			if (item.evicted)
+				throw new EvictedException(item);
+		}
+		Set<Item> ancestors = Collections.newSetFromMap(new IdentityHashMap<Item, Boolean>());
+		for (Item ancestor = this; ancestor != null; ancestor = ancestor.getDirectory())
+			ancestors.add(ancestor);
+		
+		ArrayList<Item> conflicts = new ArrayList<Item>();
+		NameIndex batchByFoldedName = new NameIndex(true);
+		for (int i = 0; i < batch.size(); i++) {
+			Item item = batch.get(i);
+			boolean isDuplicate = childrenByName.contains(item.getEncodedName())
+					|| (i > 0 && batch.get(i-1).compareName(item) == 0);
+			if (isCaseInsensitiveUnique()) {
+				isDuplicate = isDuplicate || childrenByFoldedName.contains(item.getEncodedName())
+						|| batchByFoldedName.contains(item.getEncodedName());
+				batchByFoldedName.add(item);
+			}
+			if (isDuplicate || ancestors.contains(item))
+				conflicts.add(item);
 		}
-		children.add(insertIndex, child);
+		if (!conflicts.isEmpty())
+			throw new ItemsConflictException(this, conflicts);
+		
+		ArrayList<Item> merged = new ArrayList<Item>(getNbItems() + batch.size());
+		int i = 0;
+		for (Item item : batch) {
+			while (i < getNbItems() && children.get(i).compareName(item) == -1)
+				merged.add(children.get(i++));
+			merged.add(item);
+		}
+		while (i < getNbItems())
+			merged.add(children.get(i++));
+		
+		for (int j = 0; j < batch.size(); j++) {
+			if (oldDirs.get(j) != null)
+				oldDirs.get(j).removeChild(batch.get(j));
+		}
+		
+		long sizeDelta = 0;
+		long nbFilesDelta = 0;
+		for (Item item : batch) {
+			sizeDelta += getTotalSize(item);
+			nbFilesDelta += getTotalNbFiles(item);
+			item.dir = this;
+			childrenByName.add(item);
+			childrenByFoldedName.add(item);
+		}
+		setChildren(merged);
+		updateAggregates(sizeDelta, nbFilesDelta);
+		this.setModificationTime();
+		markChanged();
+		long sequence = 0;
+		for (int j = 0; j < batch.size(); j++) {
+			batch.get(j).updateAncestry();
+			updateTypeIndex(batch.get(j), true);
+			sequence = Math.max(sequence, Journal.logMove(batch.get(j), oldDirs.get(j), this));
+			Watch.moved(batch.get(j), oldDirs.get(j), this);
+		}
+		return sequence;
+	}
+	
+	/**
+	 * Registers the given items as the children of this directory, while loading
+	 * a tree that is not yet shared with other threads.
+	 * @param 	children
+	 * 			the new children, sorted on their names, each attached to this directory
+	 * 			with attachLoaded and with all the items below it loaded already
+	 * @post	The given items are the children of this directory, the aggregates and type
+	 * 			index of this directory count the items below it. The ancestors of this
+	 * 			directory are not updated, they count this directory when it is loaded into them.
+	 */
+	void setLoadedChildren(ArrayList<Item> children) {
+		long totalSize = 0;
+		long totalNbFiles = 0;
+		for (Item child : children) {
+			childrenByName.add(child);
+			childrenByFoldedName.add(child);
+			totalSize += getTotalSize(child);
+			totalNbFiles += getTotalNbFiles(child);
+		}
+		setChildren(children);
+		this.totalSize = totalSize;
+		this.totalNbFiles = totalNbFiles;
+		for (Item child : children) {
+			if (child instanceof File) {
+				int id = ((File)child).getTypeId();
+				if (id != -1)
+					getTypeIndex().update(id, 1, child, true);
+			} else if (child instanceof Directory && ((Directory)child).typeIndex != null) {
+				TypeIndex childIndex = ((Directory)child).typeIndex;
+				for (int id = 0; id < TypeRegistry.getNbTypes(); id++) {
+					if (childIndex.getCount(id) > 0)
+						getTypeIndex().update(id, childIndex.getCount(id), child, true);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Moves a renamed child to its new position in this directory.
+	 * @param 	child
+	 * 			the child that has been renamed
+	 * @param 	oldName
+	 * 			the name of the child before it was renamed
+	 * @param 	oldIndex
+	 * 			the index of the child in this directory before it was renamed
+	 * @post	The child is at the position of its new name, only the items between
+	 * 			its old and its new position are shifted.
+	 * @effect	The modification time of this directory is updated.
+	 * 			| setModificationTime()
+	 */
+	void repositionChild(Item child, long[] oldName, int oldIndex) {
+		lock.writeLock().lock();
+		try {
+			doRepositionChild(child, oldName, oldIndex);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void doRepositionChild(Item child, long[] oldName, int oldIndex) {
+		int from = oldIndex-1;
+		int to = getInsertionPoint(child.getEncodedName(), from);
+		ArrayList<Item> newChildren = new ArrayList<Item>(children);
+		if (to > from) {
+			for (int i = from; i < to; i++)
+				newChildren.set(i, newChildren.get(i+1));
+		} else {
+			for (int i = from; i > to; i--)
+				newChildren.set(i, newChildren.get(i-1));
+		}
+		newChildren.set(to, child);
+		setChildren(newChildren);
+		
+		invalidatePaths(oldName);
+		childrenByName.remove(child, oldName);
+		childrenByName.add(child);
+		childrenByFoldedName.remove(child, oldName);
+		childrenByFoldedName.add(child);
 		this.setModificationTime();
+		markChanged();
+	}
+	
+	/**
+	 * Returns the index where an item with the given name belongs
+	 * when the item at the given index is left out.
+	 * @param 	name
+	 * 			the encoded name to look for
+	 * @param 	skip
+	 * 			the index of the item to leave out
+	 * @return	Returns the number of items, other than the skipped one, 
+	 * 			that are ranked lower than the given name.
+	 */
+	private int getInsertionPoint(long[] name, int skip) {
+		int low = 0;
+		int high = getNbItems()-1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			Item midItem = children.get(mid < skip ? mid : mid+1);
+			if (midItem.compareName(name) == -1)
+				low = mid+1;
+			else
+				high = mid;
+		}
+		return low;
 	}
 	
 	/**
@@ -361,8 +1489,26 @@ public class Directory extends Item {
 	 * 			the child to be removed
 	 */
 	protected void removeChild(Item child) {
-		children.remove(child);
-		this.setModificationTime();
+		long start = Metrics.start();
+		lock.writeLock().lock();
+		try {
+			long[] name = child.getEncodedName();
+			if (childrenByName.get(name) == child) {
+				childrenByName.remove(child);
+				invalidatePaths(name);
+				ArrayList<Item> newChildren = new ArrayList<Item>(children);
+				newChildren.remove(binarySearch(0, this.getNbItems()-1, name));
+				setChildren(newChildren);
+				childrenByFoldedName.remove(child);
+				updateAggregates(-getTotalSize(child), -getTotalNbFiles(child));
+				updateTypeIndex(child, false);
+			}
+			this.setModificationTime();
+			markChanged();
+		} finally {
+			lock.writeLock().unlock();
+			Metrics.stop(Metrics.Operation.REMOVE_CHILD, start);
+		}
 	}
 	
 	/**
@@ -374,12 +1520,324 @@ public class Directory extends Item {
 	 */
 	@Raw
 	public boolean isDirectOrIndirectSubdirectoryOf(Directory directory) {
-		Directory folder = this.getDirectory();
-		while (folder != null) {
-			if (folder == directory) {
-				return true;
-			} else folder = folder.getDirectory();
+		return directory != null && directory.getDepth() < this.getDepth()
+				&& getAncestorAtDepth(directory.getDepth()) == directory;
+	}
+	
+	
+	
+    /**********************************************************
+     * Aggregates
+     **********************************************************/
+	
+	/**
+	 * Variable registering the total size of all files in this directory and its subdirectories.
+	 */
+	private volatile long totalSize = 0;
+	
+	/**
+	 * Variable registering the number of files in this directory and its subdirectories.
+	 */
+	private volatile long totalNbFiles = 0;
+	
+	/**
+	 * Updaters for the aggregates, so ancestors can be updated without their locks.
+	 * @note	Plain fields are used because a directory is added to its parent
+	 * 			before its own field initializers have run.
+	 */
+	private static final AtomicLongFieldUpdater<Directory> TOTAL_SIZE = 
+			AtomicLongFieldUpdater.newUpdater(Directory.class, "totalSize");
+	private static final AtomicLongFieldUpdater<Directory> TOTAL_NB_FILES = 
+			AtomicLongFieldUpdater.newUpdater(Directory.class, "totalNbFiles");
+	
+	/**
+	 * Returns the total size of all files in this directory and its subdirectories (in bytes).
+	 */
+	@Basic
+	public long getTotalSize() {
+		return totalSize;
+	}
+	
+	/**
+	 * Returns the number of files in this directory and its subdirectories.
+	 */
+	@Basic
+	public long getTotalNbFiles() {
+		return totalNbFiles;
+	}
+	
+	/**
+	 * Returns the total size of the files in the given item.
+	 * @return	Returns the size of a file, the total size of a directory and 0 otherwise.
+	 */
+	private static long getTotalSize(Item item) {
+		if (item instanceof File)
+			return ((File)item).getSize();
+		if (item instanceof Directory)
+			return ((Directory)item).getTotalSize();
+		return 0;
+	}
+	
+	/**
+	 * Returns the number of files in the given item.
+	 * @return	Returns 1 for a file, the total number of files of a directory and 0 otherwise.
+	 */
+	private static long getTotalNbFiles(Item item) {
+		if (item instanceof File)
+			return 1;
+		if (item instanceof Directory)
+			return ((Directory)item).getTotalNbFiles();
+		return 0;
+	}
+	
+	/**
+	 * Adds the given deltas to the aggregates of this directory and all its ancestors.
+	 * @param 	sizeDelta
+	 * 			the change of the total size
+	 * @param 	nbFilesDelta
+	 * 			the change of the number of files
+	 * @note	The caller must hold the structure lock, so no ancestor is moved while the
+	 * 			deltas are added to the chain of ancestors.
+	 */
+	void updateAggregates(long sizeDelta, long nbFilesDelta) {
+		if (sizeDelta == 0 && nbFilesDelta == 0)
+			return;
+		for (Directory ancestor = this; ancestor != null; ancestor = ancestor.getDirectory()) {
+			TOTAL_SIZE.addAndGet(ancestor, sizeDelta);
+			TOTAL_NB_FILES.addAndGet(ancestor, nbFilesDelta);
 		}
-		return false;
+	}
+	
+	
+	
+    /**********************************************************
+     * Types
+     **********************************************************/
+	
+	/**
+	 * Variable referencing the index of the files below this directory on their type,
+	 * null as long as there are no files below this directory.
+	 */
+	private volatile TypeIndex typeIndex = null;
+	
+	/**
+	 * Returns the index of the files below this directory on their type.
+	 */
+	TypeIndex getTypeIndex() {
+		TypeIndex index = typeIndex;
+		if (index == null) {
+			synchronized (this) {
+				if (typeIndex == null)
+					typeIndex = new TypeIndex();
+				index = typeIndex;
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Returns the number of files of the given type in this directory and its subdirectories.
+	 * @param 	type
+	 * 			the type to count
+	 * @throws 	TypeNotAllowedException
+	 * 			Throws this exception when the given type is not valid
+	 * 			| !File.isValidType(type)
+	 */
+	public long countByType(String type) throws TypeNotAllowedException {
+		int id = TypeRegistry.getId(type);
+		if (id == -1)
+			throw new TypeNotAllowedException(type);
+		return peekCountByType(id);
+	}
+	
+	/**
+	 * Returns the number of files of the type with the given identifier in this directory
+	 * and its subdirectories.
+	 * @note	The result may be outdated while files are added or removed by other threads.
+	 */
+	long peekCountByType(int id) {
+		TypeIndex index = typeIndex;
+		return index == null ? 0 : index.getCount(id);
+	}
+	
+	/**
+	 * Returns the files of the given type in this directory and its subdirectories.
+	 * @param 	type
+	 * 			the type to look for
+	 * @return	Returns a new list with all files of the given type below this directory.
+	 * 			Only directories that have files of the given type below them are visited,
+	 * 			and loaded if their children are not loaded.
+	 * @throws 	TypeNotAllowedException
+	 * 			Throws this exception when the given type is not valid
+	 * 			| !File.isValidType(type)
+	 */
+	public List<File> getFilesByType(String type) throws TypeNotAllowedException {
+		int id = TypeRegistry.getId(type);
+		if (id == -1)
+			throw new TypeNotAllowedException(type);
+		while (true) {
+			if (!isLoaded())
+				load();
+			ArrayList<File> result = new ArrayList<File>();
+			ArrayList<Directory> unloaded = new ArrayList<Directory>();
+			TypeIndex index = typeIndex;
+			if (index != null)
+				index.collect(id, result, unloaded);
+			if (unloaded.isEmpty() && isLoaded())
+				return result;
+			for (Directory dir : unloaded)
+				dir.load();
+		}
+	}
+	
+	/**
+	 * Registers the files of the given child in the type indexes of this directory and its ancestors.
+	 * @param 	child
+	 * 			the child that is added to or removed from this directory
+	 * @param 	isAdded
+	 * 			whether the child is added or removed
+	 */
+	void updateTypeIndex(Item child, boolean isAdded) {
+		if (child instanceof File) {
+			int id = ((File)child).getTypeId();
+			if (id != -1)
+				updateTypeIndex(id, isAdded ? 1 : -1, child, isAdded);
+		} else if (child instanceof Directory && ((Directory)child).typeIndex != null) {
+			TypeIndex childIndex = ((Directory)child).typeIndex;
+			for (int id = 0; id < TypeRegistry.getNbTypes(); id++) {
+				long count = childIndex.getCount(id);
+				if (count > 0)
+					updateTypeIndex(id, isAdded ? count : -count, child, isAdded);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the given delta to the number of files of the given type in this directory and
+	 * its ancestors, and registers on every level whether the level below carries the type.
+	 * The caller must hold the write lock of this directory.
+	 * @note	Every index is locked on its own, from this directory up, so changes below
+	 * 			different directories only meet in the indexes of their common ancestors.
+	 */
+	private void updateTypeIndex(int id, long delta, Item child, boolean isCarrier) {
+		getTypeIndex().update(id, delta, child, isCarrier);
+		Directory lower = this;
+		for (Directory ancestor = getDirectory(); ancestor != null; ancestor = ancestor.getDirectory()) {
+			ancestor.getTypeIndex().propagate(id, delta, lower);
+			lower = ancestor;
+		}
+	}
+	
+	
+	
+    /**********************************************************
+     * Watches
+     **********************************************************/
+	
+	/**
+	 * Watches the changes to the children of this directory, or to all items below it.
+	 * @param 	listener
+	 * 			the listener to deliver the changes to
+	 * @param 	subtree
+	 * 			whether to watch all items below this directory rather than only its children
+	 * @return	Returns a new watch on this directory, that delivers the changes to the given
+	 * 			listener with the default delay and capacity.
+	 * 			| result == watch(listener, subtree, Watch.DEFAULT_DELAY, Watch.DEFAULT_CAPACITY)
+	 */
+	public Watch watch(ChangeListener listener, boolean subtree) {
+		return watch(listener, subtree, Watch.DEFAULT_DELAY, Watch.DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Watches the changes to the children of this directory, or to all items below it.
+	 * @param 	listener
+	 * 			the listener to deliver the changes to
+	 * @param 	subtree
+	 * 			whether to watch all items below this directory rather than only its children
+	 * @param 	delay
+	 * 			the number of milliseconds changes are buffered and coalesced before they are delivered
+	 * @param 	capacity
+	 * 			the maximum number of changed items that are buffered
+	 * @return	Returns a new watch on this directory, that reports every addition, removal,
+	 * 			rename and move of the items it covers, and every change of their size and
+	 * 			writability, to the given listener. See Watch.
+	 * 			| result.getDirectory() == this && result.isSubtree() == subtree
+	 * @throws	IllegalArgumentException
+	 * 			Throws this exception when the given listener is not effective, the given delay
+	 * 			is negative or the given capacity is not positive.
+	 * 			| listener == null || delay < 0 || capacity <= 0
+	 */
+	public Watch watch(ChangeListener listener, boolean subtree, long delay, int capacity)
+			throws IllegalArgumentException {
+		return Watch.open(this, listener, subtree, delay, capacity);
+	}
+	
+	
+    /**********************************************************
+     * Queries
+     **********************************************************/
+	
+	/**
+	 * Returns the items in this directory and its subdirectories that satisfy the given predicate.
+	 * The query runs in the common fork/join pool.
+	 * @param 	predicate
+	 * 			the predicate to satisfy
+	 * @return	Returns a new list with the items below this directory that satisfy the
+	 * 			given predicate, in the order of a depth first walk over the children.
+	 * 			| result == find(predicate, ForkJoinPool.commonPool())
+	 */
+	public List<Item> find(ItemPredicate predicate) {
+		return find(predicate, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Returns the items in this directory and its subdirectories that satisfy the given predicate.
+	 * @param 	predicate
+	 * 			the predicate to satisfy
+	 * @param 	pool
+	 * 			the pool to run the query in
+	 * @return	Returns a new list with the items below this directory that satisfy the
+	 * 			given predicate, in the order of a depth first walk over the children.
+	 * 			Subdirectories that the predicate rules out on their aggregates are not visited.
+	 * @note	The query works on snapshots of the children, items that are added, moved
+	 * 			or removed while it runs may or may not be part of the result.
+	 */
+	public List<Item> find(ItemPredicate predicate, ForkJoinPool pool) {
+		if (!predicate.mayMatchBelow(this))
+			return new ArrayList<Item>();
+		List<Item> children = getChildren();
+		return pool.invoke(new QueryTask(predicate, children, 0, children.size()));
+	}
+	
+	/**
+	 * Returns a sequential stream of the items in this directory and its subdirectories.
+	 * @return	Returns a stream over the items below this directory, in the order
+	 * 			of a depth first walk over the children.
+	 * 			| result == walk(Integer.MAX_VALUE)
+	 */
+	public Stream<Item> stream() {
+		return walk(Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Returns a sequential stream of the items in this directory and its subdirectories,
+	 * up to the given depth.
+	 * @param 	maxDepth
+	 * 			the maximum number of levels below this directory to visit,
+	 * 			1 for the children of this directory only
+	 * @return	Returns a stream over the items at most maxDepth levels below this directory,
+	 * 			in the order of a depth first walk over the children.
+	 * 			The children of a directory are only read when the stream reaches it,
+	 * 			and a parallel stream divides the work over the subdirectories.
+	 * @throws 	IllegalArgumentException
+	 * 			Throws this exception when the given depth is negative
+	 * 			| maxDepth < 0
+	 * @note	The stream works on snapshots of the children, items that are added, moved
+	 * 			or removed while it runs may or may not be part of it.
+	 */
+	public Stream<Item> walk(int maxDepth) throws IllegalArgumentException {
+		if (maxDepth < 0)
+			throw new IllegalArgumentException("The maximum depth may not be negative");
+		return StreamSupport.stream(new ItemSpliterator(this, maxDepth), false);
 	}
 }
@@ -2,6 +2,9 @@ package filesystem;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -49,6 +52,53 @@ class DirectoryTest {
 		assertThrows(NotWritableException.class, () -> {childDir.delete();});
 	}
 	
+	@Test
+	void testDeleteRecursively() {
+		Directory deepDir = new Directory(childDir, "Deep");
+		File deepFile = new File(deepDir, "DeepFile", 30, true, "txt");
+		new File(childDir, "Other", 20, true, "pdf");
+		deepFile.setWritable(false);
+		assertThrows(NotWritableException.class, () -> {childDir.deleteRecursively();});
+		assertEquals(parentDir.getItem("ChildDir"), childDir);
+		assertEquals(deepDir.getItem("DeepFile"), deepFile);
+		assertEquals(parentDir.getTotalNbFiles(), 3);
+		
+		deepFile.setWritable(true);
+		childDir.deleteRecursively();
+		assertNull(childDir.getDirectory());
+		assertFalse(parentDir.exists("ChildDir"));
+		assertEquals(parentDir.getTotalNbFiles(), 1);
+		assertEquals(parentDir.getTotalSize(), 0);
+		assertEquals(parentDir.countByType("txt"), 1);
+		assertEquals(parentDir.countByType("pdf"), 0);
+		assertEquals(childDir.getNbItems(), 0);
+		assertEquals(childDir.getTotalNbFiles(), 0);
+		assertNull(deepDir.getDirectory());
+		assertEquals(deepDir.getNbItems(), 0);
+		assertNull(deepFile.getDirectory());
+		assertEquals(deepFile.getRoot(), deepFile);
+		assertEquals(deepFile.getDepth(), 0);
+		assertNull(parentDir.resolve("ChildDir/Deep/DeepFile"));
+		
+		//a large subtree is released in parallel
+		java.util.ArrayList<Item> files = new java.util.ArrayList<Item>();
+		for (int i = 0; i < Directory.PARALLEL_RELEASE_THRESHOLD; i++)
+			files.add(new File("file" + i, "txt"));
+		Directory large = new Directory(parentDir, "Large");
+		large.addAll(files);
+		assertEquals(parentDir.getTotalNbFiles(), Directory.PARALLEL_RELEASE_THRESHOLD + 1);
+		large.deleteRecursively();
+		assertEquals(parentDir.getTotalNbFiles(), 1);
+		for (Item file : files)
+			assertNull(file.getDirectory());
+		
+		//deleting a root directory empties it
+		parentDir.deleteRecursively();
+		assertEquals(parentDir.getNbItems(), 0);
+		assertEquals(parentDir.getTotalNbFiles(), 0);
+		assertNull(childFile.getDirectory());
+	}
+	
 	@Test
 	void testgetIndexOf_LegalCase() {
 		assertEquals(parentDir.getIndexOf(childDir), 1);
@@ -69,6 +119,38 @@ class DirectoryTest {
 		assertEquals(parentDir.getItem(otherDir.getName()), null);
 	}
 	
+	@Test
+	void testgetItem_AfterChangeName() {
+		childFile.changeName("Renamed");
+		assertEquals(parentDir.getItem("Renamed"), childFile);
+		assertEquals(parentDir.getItem("ChildFile"), null);
+		assertEquals(parentDir.hasAsItem(childFile), true);
+		assertEquals(parentDir.getIndexOf(childFile), 2);
+	}
+	
+	@Test
+	void testChangeName_Repositions() {
+		File first = new File(parentDir, "Aaa", "txt");
+		File last = new File(parentDir, "Zzz", "txt");
+		first.changeName("Zzzz");
+		assertEquals(parentDir.getItemAt(4), first);
+		assertEquals(parentDir.getItemAt(1), childDir);
+		last.changeName("A");
+		assertEquals(parentDir.getItemAt(1), last);
+		assertEquals(parentDir.getIndexOf(first), 4);
+		assertNotNull(parentDir.getModificationTime());
+	}
+	
+	@Test
+	void testgetChildren_Snapshot() {
+		java.util.List<Item> snapshot = parentDir.getChildren();
+		for (Item child : snapshot)
+			new File(parentDir, child.getName() + "_copy", "txt");
+		assertEquals(snapshot.size(), 2);
+		assertEquals(parentDir.getNbItems(), 4);
+		assertThrows(UnsupportedOperationException.class, () -> {snapshot.add(otherDir);});
+	}
+	
 	@Test
 	void testexists_LegalCase() {
 		assertEquals(parentDir.exists("childfile"), true);
@@ -79,6 +161,91 @@ class DirectoryTest {
 		assertEquals(parentDir.exists("otherdir"), false);
 	}
 	
+	@Test
+	void testexists_AfterChangeName() {
+		childFile.changeName("Renamed");
+		assertEquals(parentDir.exists("renamed"), true);
+		assertEquals(parentDir.exists("childfile"), false);
+		childFile.delete();
+		assertEquals(parentDir.exists("RENAMED"), false);
+	}
+	
+	@Test
+	void testCaseInsensitiveUnique() {
+		parentDir.setCaseInsensitiveUnique(true);
+		assertThrows(AlreadyExistsException.class, () -> {new File(parentDir, "childfile", "txt");});
+		assertThrows(AlreadyExistsException.class, () -> {childDir.changeName("CHILDFILE");});
+		childFile.changeName("CHILDFILE");
+		assertEquals(parentDir.getItem("CHILDFILE"), childFile);
+		
+		parentDir.setCaseInsensitiveUnique(false);
+		new File(parentDir, "childfile", "txt");
+		assertThrows(AlreadyExistsException.class, () -> {parentDir.setCaseInsensitiveUnique(true);});
+		assertEquals(parentDir.isCaseInsensitiveUnique(), false);
+	}
+	
+	@Test
+	void testAddAll_LegalCase() {
+		File a = new File("a", "txt");
+		File z = new File("z", "txt");
+		File moved = new File(otherDir, "Moved", "txt");
+		parentDir.addAll(Arrays.asList((Item)z, a, moved));
+		assertEquals(parentDir.getNbItems(), 5);
+		assertEquals(parentDir.getItemAt(3), moved);
+		assertEquals(parentDir.getItemAt(5), z);
+		assertEquals(parentDir.getItem("a"), a);
+		assertEquals(a.getDirectory(), parentDir);
+		assertEquals(moved.getDirectory(), parentDir);
+		assertEquals(otherDir.getNbItems(), 0);
+		assertNotNull(parentDir.getModificationTime());
+	}
+	
+	@Test
+	void testAddAll_IllegalCase() {
+		File a = new File("a", "txt");
+		File duplicate = new File("ChildFile", "txt");
+		File twin = new File(otherDir, "a", "txt");
+		ItemsConflictException e = assertThrows(ItemsConflictException.class, 
+				() -> {childDir.addAll(Arrays.asList((Item)a, parentDir, twin));});
+		assertEquals(e.getConflicts().size(), 2);
+		e = assertThrows(ItemsConflictException.class, 
+				() -> {parentDir.addAll(Arrays.asList((Item)a, duplicate));});
+		assertEquals(e.getConflicts().size(), 1);
+		assertEquals(e.getConflicts().get(0), duplicate);
+		assertEquals(a.getDirectory(), null);
+		assertEquals(parentDir.getNbItems(), 2);
+	}
+	
+	@Test
+	void testResolve_LegalCase() {
+		File deepFile = new File(childDir, "deep", "txt");
+		assertEquals(parentDir.resolve("ChildDir/deep"), deepFile);
+		assertEquals(parentDir.resolve("ChildFile"), childFile);
+		assertEquals(parentDir.resolve("ChildDir/deep"), deepFile);
+	}
+	
+	@Test
+	void testResolve_IllegalCase() {
+		assertEquals(parentDir.resolve("ChildFile/deep"), null);
+		assertEquals(parentDir.resolve("ChildDir//deep"), null);
+		assertEquals(parentDir.resolve(""), null);
+		assertEquals(parentDir.resolve("Unknown"), null);
+	}
+	
+	@Test
+	void testResolve_AfterChange() {
+		File deepFile = new File(childDir, "deep", "txt");
+		assertEquals(parentDir.resolve("ChildDir/deep"), deepFile);
+		childDir.changeName("Renamed");
+		assertEquals(parentDir.resolve("ChildDir/deep"), null);
+		assertEquals(parentDir.resolve("Renamed/deep"), deepFile);
+		deepFile.move(otherDir);
+		assertEquals(parentDir.resolve("Renamed/deep"), null);
+		assertEquals(otherDir.resolve("deep"), deepFile);
+		deepFile.delete();
+		assertEquals(otherDir.resolve("deep"), null);
+	}
+	
 	@Test
 	void testisDirectOrIndirectSubdirectoryOf_LegalCase() {
 		Directory childchildDir = new Directory(childDir, "childchild");
@@ -86,12 +253,798 @@ class DirectoryTest {
 		assertEquals(childDir.isDirectOrIndirectSubdirectoryOf(parentDir), true);
 	}
 	
+	@Test
+	void testisDirectOrIndirectSubdirectoryOf_DeepChain() {
+		Directory deepest = childDir;
+		for (int i = 0; i < 100; i++)
+			deepest = new Directory(deepest, "level" + i);
+		assertEquals(deepest.getDepth(), 101);
+		assertEquals(deepest.isDirectOrIndirectSubdirectoryOf(parentDir), true);
+		assertEquals(deepest.getRoot(), parentDir);
+		childDir.move(otherDir);
+		assertEquals(deepest.isDirectOrIndirectSubdirectoryOf(parentDir), false);
+		assertEquals(deepest.isDirectOrIndirectSubdirectoryOf(otherDir), true);
+		assertEquals(deepest.getRoot(), otherDir);
+		assertThrows(IsOwnAncestorException.class, () -> {childDir.move(childDir);});
+	}
+	
 	@Test
 	void testisDirectOrIndirectSubdirectoryOf_illegalCase() {
 		assertEquals(parentDir.isDirectOrIndirectSubdirectoryOf(childDir), false);
 		assertEquals(otherDir.isDirectOrIndirectSubdirectoryOf(parentDir), false);
 	}
 	
+	@Test
+	void testTotalSize() {
+		File big = new File(childDir, "big", File.getMaximumSize(), true, "txt");
+		File small = new File(childDir, "small", 10, true, "txt");
+		assertEquals(parentDir.getTotalSize(), (long)File.getMaximumSize() + 10);
+		assertEquals(parentDir.getTotalNbFiles(), 3);
+		small.enlarge(5);
+		big.shorten(100);
+		assertEquals(childDir.getTotalSize(), (long)File.getMaximumSize() - 85);
+		childDir.move(otherDir);
+		assertEquals(parentDir.getTotalSize(), 0);
+		assertEquals(parentDir.getTotalNbFiles(), 1);
+		assertEquals(otherDir.getTotalNbFiles(), 2);
+		small.delete();
+		assertEquals(otherDir.getTotalSize(), (long)File.getMaximumSize() - 100);
+		assertEquals(otherDir.getTotalNbFiles(), 1);
+	}
+	
+	@Test
+	void testCountByType() {
+		File pdf = new File(childDir, "doc", "pdf");
+		Directory deepDir = new Directory(childDir, "deep");
+		File deepPdf = new File(deepDir, "deepDoc", "pdf");
+		assertEquals(parentDir.countByType("pdf"), 2);
+		assertEquals(parentDir.countByType("txt"), 1);
+		assertEquals(parentDir.countByType("java"), 0);
+		assertEquals(parentDir.getFilesByType("pdf").size(), 2);
+		assertTrue(parentDir.getFilesByType("pdf").contains(deepPdf));
+		
+		deepDir.move(otherDir);
+		assertEquals(parentDir.countByType("pdf"), 1);
+		assertEquals(otherDir.getFilesByType("pdf").get(0), deepPdf);
+		pdf.delete();
+		assertEquals(parentDir.countByType("pdf"), 0);
+		assertEquals(parentDir.getFilesByType("pdf").size(), 0);
+		assertThrows(TypeNotAllowedException.class, () -> {parentDir.countByType("exe");});
+	}
+	
+	@Test
+	void testCountByType_Concurrent() throws InterruptedException {
+		Directory[] dirs = new Directory[4];
+		for (int i = 0; i < dirs.length; i++)
+			dirs[i] = new Directory(new Directory(childDir, "Level" + i), "Deep");
+		Thread[] threads = new Thread[dirs.length];
+		for (int t = 0; t < threads.length; t++) {
+			final Directory dir = dirs[t];
+			threads[t] = new Thread(() -> {
+				//every thread adds and removes files in its own directory, below a common ancestor
+				for (int i = 0; i < 500; i++) {
+					File file = new File(dir, "File" + i, "pdf");
+					if (i % 2 == 0)
+						file.delete();
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		
+		assertEquals(parentDir.countByType("pdf"), 4 * 250);
+		assertEquals(parentDir.getFilesByType("pdf").size(), 4 * 250);
+		for (Directory dir : dirs)
+			assertEquals(dir.getDirectory().countByType("pdf"), 250);
+	}
+	
+	@Test
+	void testFind() {
+		File large = new File(childDir, "Large", 500, true, "pdf");
+		new File(childDir, "Small", 5, true, "pdf");
+		new File(parentDir, "LargeText", 800, true, "txt");
+		ItemPredicate query = ItemPredicate.sizeGreaterThan(100).and(ItemPredicate.typeIn("pdf", "java"));
+		assertEquals(parentDir.find(query), Arrays.asList(large));
+		assertEquals(parentDir.find(ItemPredicate.isDirectory()), Arrays.asList(childDir));
+		assertEquals(otherDir.find(ItemPredicate.isFile()).size(), 0);
+		assertThrows(TypeNotAllowedException.class, () -> {ItemPredicate.typeIn("exe");});
+	}
+	
+	@Test
+	void testFind_LargeTree() {
+		java.util.ArrayList<Item> expected = new java.util.ArrayList<Item>();
+		for (int i = 0; i < 3000; i++) {
+			Directory dir = new Directory(otherDir, String.format("dir%04d", i));
+			for (int j = 0; j < 3; j++) {
+				File file = new File(dir, "file" + j, i * 3 + j, true, j == 0 ? "pdf" : "txt");
+				if (file.getSize() > 2000 && j == 0)
+					expected.add(file);
+			}
+		}
+		ItemPredicate query = ItemPredicate.sizeGreaterThan(2000).and(ItemPredicate.typeIn("pdf"));
+		assertEquals(otherDir.find(query, new java.util.concurrent.ForkJoinPool(4)), expected);
+	}
+	
+	@Test
+	void testStream() {
+		Directory deepDir = new Directory(childDir, "Deep");
+		File deepFile = new File(deepDir, "DeepFile", "pdf");
+		assertEquals(parentDir.stream().collect(Collectors.toList()), 
+				Arrays.asList(childDir, deepDir, deepFile, childFile));
+		assertEquals(parentDir.walk(1).collect(Collectors.toList()), parentDir.getChildren());
+		assertEquals(parentDir.walk(2).count(), 3);
+		assertEquals(parentDir.walk(0).count(), 0);
+		assertThrows(IllegalArgumentException.class, () -> {parentDir.walk(-1);});
+	}
+	
+	@Test
+	void testStream_Parallel() {
+		// a single directory on top, so the stream has to split below it
+		Directory top = new Directory(otherDir, "Top");
+		for (int i = 0; i < 50; i++) {
+			Directory dir = new Directory(top, "dir" + i);
+			for (int j = 0; j < 40; j++)
+				new File(dir, "file" + j, "txt");
+		}
+		assertEquals(otherDir.stream().parallel().collect(Collectors.toList()), 
+				otherDir.stream().collect(Collectors.toList()));
+		assertEquals(otherDir.stream().parallel().count(), 1 + 50 + 50 * 40);
+		assertEquals(otherDir.walk(2).parallel().count(), 1 + 50);
+	}
+	
+	@Test
+	void testSnapshot() throws java.io.IOException {
+		Directory deepDir = new Directory(childDir, "Deep", false);
+		new File(deepDir, "DeepFile", 300, true, "pdf").enlarge(20);
+		new File(childDir, "Other", 50, false, "java");
+		childDir.setCaseInsensitiveUnique(true);
+		java.nio.file.Path path = java.nio.file.Files.createTempFile("snapshot", ".bin");
+		try {
+			Snapshot.write(parentDir, path);
+			Directory loaded = Snapshot.read(path);
+			java.util.List<Item> expected = parentDir.stream().collect(Collectors.toList());
+			java.util.List<Item> actual = loaded.stream().collect(Collectors.toList());
+			assertEquals(actual.size(), expected.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(actual.get(i).getName(), expected.get(i).getName());
+				assertEquals(actual.get(i).getClass(), expected.get(i).getClass());
+				assertEquals(actual.get(i).isWritable(), expected.get(i).isWritable());
+				assertEquals(actual.get(i).getCreationTime(), expected.get(i).getCreationTime());
+				assertEquals(actual.get(i).getModificationTime(), expected.get(i).getModificationTime());
+				assertEquals(actual.get(i).getDepth(), expected.get(i).getDepth());
+			}
+			assertEquals(loaded.getName(), parentDir.getName());
+			assertEquals(loaded.getTotalSize(), parentDir.getTotalSize());
+			assertEquals(loaded.countByType("pdf"), 1);
+			assertEquals(((File)loaded.resolve("ChildDir/Deep/DeepFile")).getSize(), 320);
+			assertTrue(((Directory)loaded.getItem("ChildDir")).isCaseInsensitiveUnique());
+			
+			java.nio.file.Files.write(path, new byte[] {1, 2, 3, 4});
+			assertThrows(java.io.IOException.class, () -> {Snapshot.read(path);});
+		} finally {
+			java.nio.file.Files.deleteIfExists(path);
+		}
+	}
+
+	@Test
+	void testSnapshot_PlainItems() throws java.io.IOException {
+		Item plain = new Item(childDir, "Plain", false);
+		java.nio.file.Path path = java.nio.file.Files.createTempFile("snapshot", ".bin");
+		java.nio.file.Path journalPath = java.nio.file.Files.createTempFile("journal", ".log");
+		try {
+			//items that are neither files nor directories keep their class
+			Snapshot.write(parentDir, path);
+			Item loaded = Snapshot.read(path).resolve("ChildDir/Plain");
+			assertEquals(loaded.getClass(), Item.class);
+			assertFalse(loaded.isWritable());
+			assertEquals(loaded.getCreationTime(), plain.getCreationTime());
+			LazySnapshot snapshot = LazySnapshot.open(path);
+			assertEquals(snapshot.getRoot().resolve("ChildDir/Plain").getClass(), Item.class);
+			assertEquals(snapshot.getRoot().getTotalNbFiles(), parentDir.getTotalNbFiles());
+			snapshot.close();
+			
+			Journal journal = Journal.open(parentDir, path, journalPath, Journal.SyncPolicy.ALWAYS, 0);
+			try {
+				new Item(childDir, "Journaled", true);
+			} finally {
+				journal.close();
+			}
+			Directory recovered = Journal.recover(path, journalPath);
+			assertEquals(recovered.resolve("ChildDir/Plain").getClass(), Item.class);
+			assertEquals(recovered.resolve("ChildDir/Journaled").getClass(), Item.class);
+			assertTrue(recovered.resolve("ChildDir/Journaled").isWritable());
+			assertEquals(recovered.getTotalNbFiles(), parentDir.getTotalNbFiles());
+		} finally {
+			java.nio.file.Files.deleteIfExists(path);
+			java.nio.file.Files.deleteIfExists(journalPath);
+		}
+	}
+
+	@Test
+	void testLazySnapshot() throws java.io.IOException {
+		Directory deepDir = new Directory(childDir, "Deep");
+		new File(deepDir, "DeepFile", 300, true, "pdf");
+		new File(deepDir, "OtherFile", 20, false, "java");
+		new Directory(parentDir, "Empty");
+		java.nio.file.Path path = java.nio.file.Files.createTempFile("snapshot", ".bin");
+		try {
+			Snapshot.write(parentDir, path);
+			LazySnapshot snapshot = LazySnapshot.open(path);
+			Directory root = snapshot.getRoot();
+			assertFalse(root.isLoaded());
+			assertEquals(root.getNbItems(), 3);
+			assertEquals(root.getTotalSize(), 320);
+			assertEquals(root.getTotalNbFiles(), 3);
+			assertEquals(root.countByType("pdf"), 1);
+			assertFalse(root.isLoaded());
+
+			Directory lazyChild = (Directory)root.getItem("ChildDir");
+			assertTrue(root.isLoaded());
+			assertFalse(lazyChild.isLoaded());
+			assertEquals(lazyChild.getDirectory(), root);
+			assertEquals(root.getFilesByType("pdf").get(0).getName(), "DeepFile");
+			assertEquals(snapshot.getNbLoaded(), 3);
+			java.util.List<Item> expected = parentDir.stream().collect(Collectors.toList());
+			java.util.List<Item> actual = root.stream().collect(Collectors.toList());
+			assertEquals(actual.size(), expected.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(actual.get(i).getName(), expected.get(i).getName());
+				assertEquals(actual.get(i).isWritable(), expected.get(i).isWritable());
+				assertEquals(actual.get(i).getModificationTime(), expected.get(i).getModificationTime());
+				assertEquals(actual.get(i).getDepth(), expected.get(i).getDepth());
+			}
+
+			//an unchanged directory is unloaded, its items are detached
+			File deepFile = (File)root.resolve("ChildDir/Deep/DeepFile");
+			assertTrue(lazyChild.evict());
+			assertFalse(lazyChild.isLoaded());
+			assertNull(deepFile.getDirectory().getDirectory());
+			assertNotSame(root.resolve("ChildDir/Deep/DeepFile"), deepFile);
+			assertEquals(root.resolve("ChildDir/Deep/DeepFile").getRoot(), root);
+			assertEquals(root.resolve("ChildDir/Deep/DeepFile").getDepth(), 3);
+			assertEquals(root.getTotalSize(), 320);
+			
+			//the items that have been unloaded can no longer be changed
+			Directory evictedDeep = deepFile.getDirectory();
+			assertTrue(deepFile.isEvicted());
+			assertTrue(evictedDeep.isEvicted());
+			assertFalse(root.resolve("ChildDir/Deep/DeepFile").isEvicted());
+			assertThrows(EvictedException.class, () -> {deepFile.enlarge(5);});
+			assertThrows(EvictedException.class, () -> {deepFile.changeName("Renamed");});
+			assertThrows(EvictedException.class, () -> {deepFile.move(root);});
+			assertThrows(EvictedException.class, () -> {new File(evictedDeep, "Lost", "txt");});
+			assertThrows(EvictedException.class, () -> {evictedDeep.deleteRecursively();});
+			assertThrows(EvictedException.class, () -> {root.addAll(Arrays.asList(deepFile));});
+			assertEquals(deepFile.getSize(), 300);
+			assertEquals(root.getTotalSize(), 320);
+
+			//a changed directory, and its ancestors, can not be unloaded
+			((File)root.resolve("ChildDir/Deep/DeepFile")).enlarge(10);
+			new File(lazyChild, "New", "txt");
+			assertFalse(root.evict());
+			assertFalse(lazyChild.evict());
+			assertFalse(((Directory)lazyChild.getItem("Deep")).evict());
+			assertEquals(root.getTotalSize(), 330);
+			snapshot.evict(10);
+			assertEquals(root.getTotalSize(), 330);
+			assertEquals(root.countByType("txt"), 2);
+			assertEquals(root.getFilesByType("pdf").get(0).getSize(), 310);
+			assertFalse(new Directory("Other").evict());
+			
+			//memory pressure is only reported, and the thresholds are set back
+			java.util.List<java.lang.management.MemoryPoolMXBean> pools = java.lang.management.ManagementFactory.getMemoryPoolMXBeans().stream()
+					.filter(pool -> pool.isCollectionUsageThresholdSupported()).collect(Collectors.toList());
+			java.util.List<Long> thresholds = pools.stream().map(pool -> pool.getCollectionUsageThreshold()).collect(Collectors.toList());
+			assertThrows(IllegalArgumentException.class, () -> {snapshot.setMemoryThreshold(0.5, null);});
+			snapshot.setMemoryThreshold(0.9, () -> {});
+			snapshot.close();
+			assertEquals(pools.stream().map(pool -> pool.getCollectionUsageThreshold()).collect(Collectors.toList()), thresholds);
+
+			java.nio.file.Files.write(path, new byte[] {1, 2, 3, 4});
+			assertThrows(java.io.IOException.class, () -> {LazySnapshot.open(path);});
+		} finally {
+			java.nio.file.Files.deleteIfExists(path);
+		}
+	}
+
+	@Test
+	void testJournal() throws java.io.IOException {
+		new File(childDir, "Before", 10, true, "txt");
+		java.nio.file.Path snapshot = java.nio.file.Files.createTempFile("snapshot", ".bin");
+		java.nio.file.Path journalPath = java.nio.file.Files.createTempFile("journal", ".log");
+		try {
+			Journal journal = Journal.open(parentDir, snapshot, journalPath, Journal.SyncPolicy.ALWAYS, 0);
+			try {
+				assertThrows(IllegalStateException.class, () -> {
+					Journal.open(otherDir, snapshot, journalPath, Journal.SyncPolicy.NEVER, 10);});
+				Directory deepDir = new Directory(childDir, "Deep");
+				File deepFile = new File(deepDir, "DeepFile", 300, true, "pdf");
+				deepFile.enlarge(20);
+				deepFile.shorten(5);
+				childFile.changeName("Renamed");
+				childFile.move(deepDir);
+				((File)childDir.getItem("Before")).delete();
+				otherDir.move(childDir);
+				new File(otherDir, "Moved", "java");
+				childDir.setCaseInsensitiveUnique(true);
+				deepDir.setWritable(false);
+				Directory detached = new Directory(parentDir, "Detached");
+				new File(detached, "Gone", "txt");
+				detached.makeRoot();
+				new File(detached, "NotJournaled", "txt");
+				Directory removed = new Directory(parentDir, "Removed");
+				new File(new Directory(removed, "Inner"), "Gone", 40, true, "txt");
+				removed.deleteRecursively();
+			} finally {
+				journal.close();
+			}
+
+			Directory recovered = Journal.recover(snapshot, journalPath);
+			java.util.List<Item> expected = parentDir.stream().collect(Collectors.toList());
+			java.util.List<Item> actual = recovered.stream().collect(Collectors.toList());
+			assertEquals(actual.size(), expected.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(actual.get(i).getName(), expected.get(i).getName());
+				assertEquals(actual.get(i).getClass(), expected.get(i).getClass());
+				assertEquals(actual.get(i).isWritable(), expected.get(i).isWritable());
+				assertEquals(actual.get(i).getCreationTime(), expected.get(i).getCreationTime());
+				assertEquals(actual.get(i).getModificationTime(), expected.get(i).getModificationTime());
+				assertEquals(actual.get(i).getDepth(), expected.get(i).getDepth());
+			}
+			assertEquals(recovered.getModificationTime(), parentDir.getModificationTime());
+			assertEquals(recovered.getTotalSize(), parentDir.getTotalSize());
+			assertEquals(((File)recovered.resolve("ChildDir/Deep/DeepFile")).getSize(), 315);
+			assertTrue(((Directory)recovered.getItem("ChildDir")).isCaseInsensitiveUnique());
+			assertNull(recovered.getItem("Detached"));
+			assertNull(recovered.getItem("Removed"));
+
+			//a torn record at the end of the journal is ignored
+			java.nio.file.Files.write(journalPath, new byte[] {0, 0, 0, 40, 1, 2},
+					java.nio.file.StandardOpenOption.APPEND);
+			assertEquals(Journal.recover(snapshot, journalPath).getTotalSize(), parentDir.getTotalSize());
+		} finally {
+			java.nio.file.Files.deleteIfExists(snapshot);
+			java.nio.file.Files.deleteIfExists(journalPath);
+		}
+	}
+
+	@Test
+	void testJournal_ConcurrentWritability() throws java.io.IOException, InterruptedException {
+		File file = new File(childDir, "Resized", 0, true, "txt");
+		java.nio.file.Path snapshot = java.nio.file.Files.createTempFile("snapshot", ".bin");
+		java.nio.file.Path journalPath = java.nio.file.Files.createTempFile("journal", ".log");
+		try {
+			Journal journal = Journal.open(parentDir, snapshot, journalPath, Journal.SyncPolicy.NEVER, 10);
+			try {
+				Thread resizer = new Thread(() -> {
+					//a resize that is recorded after the file has been made read-only can not be replayed
+					try {
+						for (int i = 0; i < 20000; i++) {
+							file.enlarge(1);
+							file.changeName(i % 2 == 0 ? "Renamed" : "Resized");
+						}
+					} catch (NotWritableException e) {
+						//the file has been made read-only
+					}
+				});
+				resizer.start();
+				Thread.sleep(5);
+				file.setWritable(false);
+				resizer.join();
+			} finally {
+				journal.close();
+			}
+			
+			Directory recovered = Journal.recover(snapshot, journalPath);
+			File recoveredFile = (File)recovered.resolve("ChildDir/" + file.getName());
+			assertEquals(recoveredFile.getSize(), file.getSize());
+			assertFalse(recoveredFile.isWritable());
+		} finally {
+			java.nio.file.Files.deleteIfExists(snapshot);
+			java.nio.file.Files.deleteIfExists(journalPath);
+		}
+	}
+
+	@Test
+	void testImporter() throws java.io.IOException {
+		java.nio.file.Path tree = java.nio.file.Files.createTempDirectory("tree");
+		try {
+			java.nio.file.Files.write(tree.resolve("a.pdf"), new byte[100]);
+			java.nio.file.Files.write(tree.resolve("a.txt"), new byte[10]);
+			java.nio.file.Files.write(tree.resolve("notes.TXT"), new byte[5]);
+			java.nio.file.Files.write(tree.resolve("readme.md"), new byte[3]);
+			java.nio.file.Files.write(tree.resolve("image.png"), new byte[1]);
+			java.nio.file.Files.write(tree.resolve("bad name.txt"), new byte[1]);
+			java.nio.file.Path deeper = java.nio.file.Files.createDirectories(tree.resolve("sub/deeper"));
+			java.nio.file.Files.write(tree.resolve("sub/Code.java"), new byte[20]);
+			java.nio.file.Files.write(deeper.resolve("x.pdf"), new byte[7]);
+
+			Importer importer = new Importer(2);
+			importer.mapExtension("md", "txt");
+			assertThrows(TypeNotAllowedException.class, () -> {importer.mapExtension("png", "png");});
+			Directory root = importer.importTree(tree);
+			assertEquals(importer.getNbFiles(), 5);
+			assertEquals(importer.getNbDirectories(), 3);
+			assertEquals(importer.getNbSkipped(), 3);
+			assertEquals(root.getName(), tree.getFileName().toString());
+			assertEquals(root.getNbItems(), 4);
+			assertEquals(root.getTotalSize(), 135);
+			assertEquals(root.getTotalNbFiles(), 5);
+			assertEquals(root.countByType("pdf"), 2);
+			assertEquals(((File)root.getItem("a")).getType(), "pdf");
+			assertEquals(((File)root.getItem("notes")).getType(), "txt");
+			assertEquals(((File)root.getItem("readme")).getSize(), 3);
+			Item x = root.resolve("sub/deeper/x");
+			assertEquals(x.getDepth(), 3);
+			assertEquals(x.getRoot(), root);
+			assertEquals(x.getModificationTime() == null ? x.getCreationTime().getTime() : x.getModificationTime().getTime(),
+					java.nio.file.Files.getLastModifiedTime(deeper.resolve("x.pdf")).toMillis());
+
+			importer.importInto(otherDir, tree);
+			assertEquals(otherDir.getNbItems(), 4);
+			assertEquals(otherDir.resolve("sub/deeper/x").getDepth(), 3);
+			assertEquals(otherDir.getTotalSize(), 135);
+			assertEquals(otherDir.getTotalNbFiles(), 5);
+			assertThrows(ItemsConflictException.class, () -> {importer.importInto(otherDir, tree);});
+			assertThrows(java.nio.file.NotDirectoryException.class, () -> {importer.importTree(deeper.resolve("x.pdf"));});
+		} finally {
+			try (java.util.stream.Stream<java.nio.file.Path> paths = java.nio.file.Files.walk(tree)) {
+				for (java.nio.file.Path path : paths.sorted(java.util.Comparator.reverseOrder()).collect(Collectors.toList()))
+					java.nio.file.Files.delete(path);
+			}
+		}
+	}
+
+	@Test
+	void testMetrics() {
+		Metrics metrics = new Metrics();
+		Metrics.setRecorder(metrics);
+		try {
+			File file = new File(childDir, "Measured", "txt");
+			file.changeName("Renamed");
+			file.move(otherDir);
+			assertNotNull(otherDir.getItem("Renamed"));
+			assertNull(otherDir.getItem("Missing"));
+		} finally {
+			Metrics.setRecorder(null);
+		}
+		assertNull(Metrics.getRecorder());
+		childDir.getItem("ChildFile");
+		assertEquals(metrics.getStatistics(Metrics.Operation.MOVE).getCount(), 2);
+		assertEquals(metrics.getStatistics(Metrics.Operation.ADD_CHILD).getCount(), 2);
+		assertEquals(metrics.getStatistics(Metrics.Operation.REMOVE_CHILD).getCount(), 1);
+		assertEquals(metrics.getStatistics(Metrics.Operation.CHANGE_NAME).getCount(), 1);
+		assertEquals(metrics.getStatistics(Metrics.Operation.GET_ITEM).getCount(), 2);
+		assertTrue(metrics.report().contains("change_name"));
+
+		metrics.reset();
+		for (long nanos = 1; nanos <= 100000; nanos++)
+			metrics.record(Metrics.Operation.GET_ITEM, nanos);
+		Metrics.Statistics statistics = metrics.getStatistics(Metrics.Operation.GET_ITEM);
+		assertEquals(statistics.getCount(), 100000);
+		assertEquals(statistics.getMaximum(), 100000);
+		assertEquals(statistics.getMean(), 50000.5, 1e-6);
+		assertEquals(statistics.getPercentile(50), 50000, 50000 / 32);
+		assertEquals(statistics.getPercentile(99), 99000, 99000 / 32);
+		assertEquals(statistics.getPercentile(100), 100000);
+		assertEquals(statistics.getPercentile(0), 1);
+		assertThrows(IllegalArgumentException.class, () -> {statistics.getPercentile(101);});
+		assertEquals(metrics.getStatistics(Metrics.Operation.MOVE).getCount(), 0);
+	}
+
+	@Test
+	void testWatch() throws InterruptedException {
+		java.util.List<ChangeEvent> subtreeEvents = java.util.Collections.synchronizedList(new java.util.ArrayList<ChangeEvent>());
+		java.util.List<ChangeEvent> childEvents = java.util.Collections.synchronizedList(new java.util.ArrayList<ChangeEvent>());
+		java.util.concurrent.atomic.AtomicInteger nbDeliveries = new java.util.concurrent.atomic.AtomicInteger();
+		Watch subtreeWatch = parentDir.watch(events -> {nbDeliveries.incrementAndGet(); subtreeEvents.addAll(events);}, true, 20, 1000);
+		Watch childWatch = childDir.watch(events -> childEvents.addAll(events), false, 20, 1000);
+		try {
+			//a burst of resizes arrives as a few coalesced events
+			for (int i = 0; i < 100000; i++)
+				childFile.enlarge(1);
+			File file = new File(childDir, "Watched", "txt");
+			file.changeName("Renamed");
+			file.move(parentDir);
+			file.setWritable(false);
+			file.setWritable(true);
+			file.move(otherDir);
+			long deadline = System.currentTimeMillis() + 10000;
+			while (System.currentTimeMillis() < deadline && (sizeDelta(subtreeEvents) < 100000 || childEvents.size() < 3
+					|| subtreeEvents.stream().noneMatch(event -> event.getKind() == ChangeEvent.Kind.CHILD_REMOVED)))
+				Thread.sleep(10);
+			assertEquals(sizeDelta(subtreeEvents), 100000);
+			assertTrue(nbDeliveries.get() < 1000);
+
+			synchronized (childEvents) {
+				assertEquals(childEvents.get(0).getKind(), ChangeEvent.Kind.CHILD_ADDED);
+				assertEquals(childEvents.get(1).getKind(), ChangeEvent.Kind.RENAMED);
+				assertEquals(childEvents.get(1).getOldName(), "Watched");
+				assertEquals(childEvents.get(2).getKind(), ChangeEvent.Kind.CHILD_REMOVED);
+				assertSame(childEvents.get(2).getItem(), file);
+			}
+			synchronized (subtreeEvents) {
+				java.util.List<ChangeEvent.Kind> kinds = subtreeEvents.stream().filter(event -> event.getItem() == file)
+						.map(ChangeEvent::getKind).collect(Collectors.toList());
+				assertTrue(kinds.containsAll(Arrays.asList(ChangeEvent.Kind.CHILD_ADDED, ChangeEvent.Kind.RENAMED,
+						ChangeEvent.Kind.MOVED, ChangeEvent.Kind.WRITABILITY_CHANGED, ChangeEvent.Kind.CHILD_REMOVED)));
+				for (ChangeEvent event : subtreeEvents) {
+					if (event.getKind() == ChangeEvent.Kind.MOVED) {
+						assertSame(event.getOldDirectory(), childDir);
+						assertSame(event.getDirectory(), parentDir);
+					}
+				}
+			}
+		} finally {
+			subtreeWatch.close();
+			childWatch.close();
+		}
+		assertTrue(subtreeWatch.isClosed());
+
+		//a watch that can not keep up reports an overflow
+		java.util.List<ChangeEvent> overflowEvents = java.util.Collections.synchronizedList(new java.util.ArrayList<ChangeEvent>());
+		Watch overflowWatch = otherDir.watch(events -> overflowEvents.addAll(events), false, 100, 10);
+		try {
+			for (int i = 0; i < 20; i++)
+				new File(otherDir, "File" + i, "pdf");
+			long deadline = System.currentTimeMillis() + 10000;
+			while (System.currentTimeMillis() < deadline && overflowEvents.isEmpty())
+				Thread.sleep(10);
+			assertEquals(overflowEvents.size(), 1);
+			assertEquals(overflowEvents.get(0).getKind(), ChangeEvent.Kind.OVERFLOW);
+			assertEquals(overflowEvents.get(0).getCount(), 20);
+		} finally {
+			overflowWatch.close();
+		}
+		assertTrue(overflowWatch.isClosed());
+		assertThrows(IllegalArgumentException.class, () -> {otherDir.watch(null, true);});
+	}
+
+	private static long sizeDelta(java.util.List<ChangeEvent> events) {
+		synchronized (events) {
+			long sizeDelta = 0;
+			for (ChangeEvent event : events)
+				sizeDelta += event.getSizeDelta();
+			return sizeDelta;
+		}
+	}
+
+	@Test
+	void testCopyTo() {
+		Directory deepDir = new Directory(childDir, "Deep");
+		File deepFile = new File(deepDir, "DeepFile", 30, true, "pdf");
+		Directory sideDir = new Directory(childDir, "Side");
+		new File(sideDir, "SideFile", 20, false, "txt");
+		java.util.List<String> before = childDir.stream().map(Item::getName).collect(Collectors.toList());
+		
+		Directory copy = (Directory)childDir.copyTo(otherDir, "Copy");
+		assertEquals(copy.getName(), "Copy");
+		assertEquals(copy.getDirectory(), otherDir);
+		assertNull(copy.getModificationTime());
+		assertFalse(copy.isLoaded());
+		assertEquals(copy.getNbItems(), 2);
+		assertEquals(copy.getTotalSize(), 50);
+		assertEquals(otherDir.getTotalNbFiles(), 2);
+		assertEquals(otherDir.countByType("pdf"), 1);
+		assertFalse(copy.isLoaded());
+		
+		//a change below the original copies the directories on its way only
+		deepFile.enlarge(10);
+		deepFile.changeName("Changed");
+		new File(deepDir, "Added", 5, true, "txt");
+		assertTrue(copy.isLoaded());
+		Directory copiedSide = (Directory)copy.getItem("Side");
+		assertFalse(copiedSide.isLoaded());
+		File copiedFile = (File)copy.resolve("Deep/DeepFile");
+		assertEquals(copiedFile.getSize(), 30);
+		assertEquals(copiedFile.getCreationTime(), deepFile.getCreationTime());
+		assertNull(copy.resolve("Deep/Added"));
+		assertEquals(copy.getTotalSize(), 50);
+		assertEquals(childDir.getTotalSize(), 65);
+		assertEquals(copy.stream().map(Item::getName).collect(Collectors.toList()), before);
+		assertFalse(((File)copiedSide.getItem("SideFile")).isWritable());
+		assertEquals(otherDir.getFilesByType("pdf"), Arrays.asList(copiedFile));
+		
+		//a change to the copy does not change the original
+		copiedFile.shorten(10);
+		copiedSide.getItem("SideFile").setWritable(true);
+		copiedSide.deleteRecursively();
+		assertEquals(deepFile.getSize(), 40);
+		assertFalse(sideDir.getItem("SideFile").isWritable());
+		assertEquals(sideDir.getNbItems(), 1);
+		assertEquals(otherDir.getTotalSize(), 20);
+		assertEquals(childDir.getTotalSize(), 65);
+		
+		//a copy into the original holds the original as it was
+		Directory inner = (Directory)childDir.copyTo(deepDir, "Inner");
+		assertEquals(inner.resolve("Deep/Changed").getDirectory().getName(), "Deep");
+		assertNull(inner.resolve("Deep/Inner"));
+		assertEquals(childDir.getTotalSize(), 130);
+		
+		File fileCopy = (File)childFile.copyTo(parentDir, "FileCopy");
+		assertEquals(fileCopy.getType(), childFile.getType());
+		assertEquals(parentDir.getItem("FileCopy"), fileCopy);
+		assertThrows(AlreadyExistsException.class, () -> {childDir.copyTo(parentDir, "ChildFile");});
+		assertNull(childDir.copyTo(null, "Root").getDirectory());
+	}
+	
+	@Test
+	void testCopyTo_ConcurrentChanges() throws InterruptedException {
+		File[] files = new File[4];
+		for (int i = 0; i < files.length; i++)
+			files[i] = new File(new Directory(childDir, "Level" + i), "File", 0, true, "txt");
+		Thread[] threads = new Thread[files.length];
+		for (int t = 0; t < threads.length; t++) {
+			final File file = files[t];
+			threads[t] = new Thread(() -> {
+				//single items change without the structure lock while copies are made
+				for (int i = 0; i < 2000; i++)
+					file.enlarge(1);
+			});
+			threads[t].start();
+		}
+		java.util.ArrayList<Directory> copies = new java.util.ArrayList<Directory>();
+		for (int i = 0; i < 20; i++)
+			copies.add((Directory)childDir.copyTo(otherDir, "Copy" + i));
+		for (Thread thread : threads)
+			thread.join();
+		
+		for (Directory copy : copies) {
+			long totalSize = copy.stream().filter(item -> item instanceof File).mapToLong(item -> ((File)item).getSize()).sum();
+			assertEquals(copy.getTotalSize(), totalSize);
+		}
+		assertEquals(childDir.getTotalSize(), 4 * 2000);
+	}
+	
+	@Test
+	void testEnlarge_ConcurrentAncestorMove() throws InterruptedException {
+		Directory root1 = new Directory("Root1");
+		Directory root2 = new Directory("Root2");
+		Directory mid = new Directory(root1, "Mid");
+		File file = new File(new Directory(mid, "Leaf"), "File", 100, true, "txt");
+		Thread resizer = new Thread(() -> {
+			//the delta is added to the ancestors while they may be moved
+			for (int i = 0; i < 5000; i++) {
+				file.enlarge(3);
+				file.shorten(3);
+			}
+		});
+		Thread mover = new Thread(() -> {
+			for (int i = 0; i < 2000; i++)
+				mid.move(i % 2 == 0 ? root2 : root1);
+		});
+		resizer.start();
+		mover.start();
+		resizer.join();
+		mover.join();
+		
+		assertEquals(mid.getDirectory(), root1);
+		assertEquals(root1.getTotalSize(), 100);
+		assertEquals(root2.getTotalSize(), 0);
+		assertEquals(mid.getTotalSize(), 100);
+	}
+	
+	@Test
+	void testCopyTo_ReleasedCopies() throws InterruptedException {
+		Directory emptyDir = new Directory(childDir, "Empty");
+		new File(childDir, "Shared", 10, true, "txt");
+		
+		//a deleted copy no longer shares the children of the original
+		Directory emptyCopy = (Directory)emptyDir.copyTo(otherDir, "EmptyCopy");
+		assertTrue(Directory.isShared(emptyDir));
+		emptyCopy.delete();
+		assertFalse(Directory.isShared(emptyDir));
+		Directory deletedCopy = (Directory)childDir.copyTo(otherDir, "DeletedCopy");
+		assertTrue(Directory.isShared(childDir));
+		deletedCopy.deleteRecursively();
+		assertFalse(Directory.isShared(childDir));
+		
+		//a copy that is no longer referenced is forgotten without copying anything
+		childDir.copyTo(null, "Dropped");
+		assertTrue(Directory.isShared(childDir));
+		for (int i = 0; i < 100 && Directory.isShared(childDir); i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertFalse(Directory.isShared(childDir));
+	}
+
+	@Test
+	void testUsePeriodIndex() {
+		java.util.Random random = new java.util.Random(23);
+		java.util.ArrayList<Item> items = new java.util.ArrayList<Item>();
+		for (int i = 0; i < 300; i++) {
+			long creationTime = random.nextInt(1000);
+			long modificationTime = random.nextInt(10) == 0 ? Item.NOT_MODIFIED : creationTime + random.nextInt(50);
+			items.add(new File(NameCodec.encode("f" + i), File.getFlags(true, 0), creationTime, modificationTime, 0));
+		}
+		UsePeriodIndex index = new UsePeriodIndex(items);
+		long nbPairs = 0;
+		java.util.HashSet<java.util.List<Item>> pairs = new java.util.HashSet<java.util.List<Item>>();
+		for (Item[] pair : index.getOverlappingPairs()) {
+			assertTrue(pair[0] != pair[1]);
+			assertTrue(pairs.add(java.util.Arrays.asList(pair[0], pair[1])));
+			assertFalse(pairs.contains(java.util.Arrays.asList(pair[1], pair[0])));
+		}
+		for (int i = 0; i < items.size(); i++) {
+			Item item = items.get(i);
+			java.util.HashSet<Item> overlapping = new java.util.HashSet<Item>();
+			for (int j = 0; j < items.size(); j++) {
+				Item other = items.get(j);
+				if (other != item && item.hasOverlappingUsePeriod(other)) {
+					overlapping.add(other);
+					if (i < j) {
+						nbPairs++;
+						assertTrue(pairs.contains(java.util.Arrays.asList(item, other))
+								|| pairs.contains(java.util.Arrays.asList(other, item)));
+					}
+				}
+			}
+			assertEquals(new java.util.HashSet<Item>(index.getOverlapping(item)), overlapping);
+		}
+		assertEquals(pairs.size(), nbPairs);
+		assertEquals(index.countOverlappingPairs(), nbPairs);
+		for (int i = 0; i < 50; i++) {
+			long from = random.nextInt(1100) - 50;
+			long to = from + random.nextInt(100);
+			java.util.HashSet<Item> overlapping = new java.util.HashSet<Item>();
+			for (Item item : items)
+				if (item.getModificationTime() != null
+						&& item.getModificationMillis() >= from && item.getCreationMillis() <= to)
+					overlapping.add(item);
+			assertEquals(new java.util.HashSet<Item>(index.getOverlapping(new java.util.Date(from), new java.util.Date(to))), overlapping);
+		}
+		assertThrows(IllegalArgumentException.class, () -> {index.getOverlapping(new java.util.Date(2), new java.util.Date(1));});
+		
+		File used = new File(childDir, "Used", "txt");
+		used.changeName("Renamed");
+		UsePeriodIndex subtreeIndex = UsePeriodIndex.of(parentDir);
+		assertEquals(subtreeIndex.getNbItems(), parentDir.stream().filter(item -> item.getModificationTime() != null).count());
+		assertEquals(new java.util.HashSet<Item>(subtreeIndex.getOverlapping(used)),
+				parentDir.stream().filter(item -> item != used && used.hasOverlappingUsePeriod(item)).collect(Collectors.toSet()));
+		assertTrue(subtreeIndex.getOverlapping(childFile).isEmpty());
+	}
+
+	@Test
+	void testConcurrentChanges()throws InterruptedException {
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int thread = t;
+			threads[t] = new Thread(() -> {
+				java.util.Random random = new java.util.Random(thread);
+				java.util.ArrayList<File> own = new java.util.ArrayList<File>();
+				for (int i = 0; i < 2000; i++) {
+					int action = random.nextInt(4);
+					if (action == 0 || own.isEmpty()) {
+						own.add(new File(childDir, "t" + thread + "_" + i, "txt"));
+					} else if (action == 1) {
+						own.remove(random.nextInt(own.size())).delete();
+					} else if (action == 2) {
+						own.get(random.nextInt(own.size())).changeName("t" + thread + "_r" + i);
+					} else {
+						childDir.getItem("t" + random.nextInt(threads.length) + "_" + random.nextInt(i+1));
+						childDir.exists("T" + thread + "_" + i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		
+		for (int i = 1; i < childDir.getNbItems(); i++) {
+			assertTrue(childDir.getItemAt(i+1).compareName(childDir.getItemAt(i).getName()) == 1);
+		}
+		for (int i = 1; i <= childDir.getNbItems(); i++) {
+			Item child = childDir.getItemAt(i);
+			assertEquals(child.getDirectory(), childDir);
+			assertEquals(childDir.getItem(child.getName()), child);
+			assertEquals(childDir.getIndexOf(child), i);
+		}
+		assertEquals(childDir.getTotalNbFiles(), childDir.getNbItems());
+	}
+	
 	@Test
 	public void testSorting () {
 		
@@ -0,0 +1,45 @@
+package filesystem;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class for signaling illegal attempts to change an item that has been unloaded
+ * from the tree of a lazy snapshot, see Directory.evict().
+ *
+ * @author 	Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version	1.0
+ */
+public class EvictedException extends RuntimeException {
+
+	/**
+	 * Required because this class inherits from Exception
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Variable referencing the item that has been unloaded.
+	 */
+	private final Item item;
+
+	/**
+	 * Initialize this new evicted exception involving the given item.
+	 *
+	 * @param	item
+	 * 			The item for the new evicted exception.
+	 * @post	The item involved in the new evicted exception
+	 * 			is set to the given item.
+	 * 			| new.getItem() == item
+	 */
+	@Raw
+	public EvictedException(Item item) {
+		this.item = item;
+	}
+
+	/**
+	 * Return the item involved in this evicted exception.
+	 */
+	@Raw @Basic
+	public Item getItem() {
+		return item;
+	}
+}
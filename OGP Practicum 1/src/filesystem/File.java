@@ -1,8 +1,9 @@
 package filesystem;
 
 import be.kuleuven.cs.som.annotate.*;
-import java.util.ArrayList;
+import java.util.List;
 import java.util.Date;
+import java.util.concurrent.locks.Lock;
 
 /**
  * A class of files.
@@ -29,8 +30,6 @@ public class File extends Item {
      * Constructors
      **********************************************************/
 	
-	private final static ArrayList<String> allowedTypes = new ArrayList<String>(java.util.Arrays.asList("pdf", "txt", "java"));
-	
 	/**
      * Initialize a new file with given name, size and writability.
      * @param	dir
@@ -62,9 +61,12 @@ public class File extends Item {
      *          | new.getModificationTime() == null
      */
 	public File(Directory dir, String name, int size, boolean writable, String type) {
-		super(dir, name, writable); //maakt item aan
+		super(name, writable); //maakt item aan
 		setSize(size);
 		setType(type);
+		//the file is only added to its directory once its size and type are set
+		if (dir != null)
+			move(dir);
 	}
 	
 	/**
@@ -116,6 +118,35 @@ public class File extends Item {
 	public File(String name, String type) {
 		this(name, 0, true, type);
 	}
+	
+	/**
+     * Initialize a new root file with the given state, as read from a snapshot.
+     * @param   name
+     *          The encoded name of the new file.
+     * @param	flags
+     * 			The flags of the new file, holding its writability and type.
+     * @param	creationTime
+     * 			The creation time of the new file.
+     * @param	modificationTime
+     * 			The modification time of the new file.
+     * @param	size
+     * 			The size of the new file.
+     * @effect	The new file is initialized with the given state.
+     * 			| super(name, flags, creationTime, modificationTime)
+     */
+	@Raw
+	File(long[] name, byte flags, long creationTime, long modificationTime, int size) {
+		super(name, flags, creationTime, modificationTime);
+		this.size = size;
+	}
+    
+    /**
+     * Returns a new root file with the given name and times and the writability, type and size of this file.
+     */
+    @Override
+    File copy(long[] name, long creationTime, long modificationTime) {
+    	return new File(name, flags, creationTime, modificationTime, getSize());
+    }
     
     /**
      * Return the name for a new item which is to be used when the
@@ -132,15 +163,28 @@ public class File extends Item {
     /**********************************************************
      * type - defensive programming
      **********************************************************/
-    private String type;
+    
+    /**
+     * Variable registering the number of bits the type of a file is shifted 
+     * in the flags of the file. The type is registered as its identifier in
+     * the type registry plus one, zero meaning no type is set yet.
+     */
+    private static final int TYPE_SHIFT = 1;
+    
+    /**
+     * Returns the flags of a file with the given writability and the type with the given identifier.
+     */
+    static byte getFlags(boolean writable, int typeId) {
+    	return (byte)((writable ? WRITABLE : 0) | ((typeId + 1) << TYPE_SHIFT));
+    }
     
     /**
      * Returns the allowed extensions for a file
-     * @return	Returns the allowed extensions for a file as an ArrayList object.
+     * @return	Returns the allowed extensions for a file as an unmodifiable List object.
      */
     @Immutable
-    public static ArrayList<String> getAllowedTypes () {
-    	return allowedTypes;
+    public static List<String> getAllowedTypes () {
+    	return TypeRegistry.getTypes();
     }
     
     /**
@@ -153,9 +197,10 @@ public class File extends Item {
      * 			| isValidType(type)
      */
     @Raw
-    private void setType (String type) throws TypeNotAllowedException {
-    	if (isValidType(type))
-    		this.type = type;
+    private synchronized void setType (String type) throws TypeNotAllowedException {
+    	if (isValidType(type)) {
+    		flags = (byte)((flags & WRITABLE) | ((TypeRegistry.getId(type) + 1) << TYPE_SHIFT));
+    	}
     	else {
     		throw new TypeNotAllowedException (type);
     	}
@@ -170,7 +215,7 @@ public class File extends Item {
      */
     @Raw
     public static boolean isValidType(String type) {
-    	return getAllowedTypes().contains(type);
+    	return TypeRegistry.getId(type) != -1;
     }
     
     /**
@@ -179,7 +224,16 @@ public class File extends Item {
      */
     @Basic
     public String getType() {
-    	return this.type;
+    	int id = getTypeId();
+    	return id == -1 ? null : TypeRegistry.getType(id);
+    }
+    
+    /**
+     * Returns the identifier of the type of the current file in the type registry.
+     * @return	Returns -1 while the type of the current file is not yet set.
+     */
+    int getTypeId() {
+    	return (flags >>> TYPE_SHIFT & 0x7f) - 1;
     }
     
     /**********************************************************
@@ -214,9 +268,13 @@ public class File extends Item {
      *         | isValidSize(size)
      * @post   The given size is registered as the size of this file.
      *         | new.getSize() == size
+     * @effect The total size of the directory of this file is adapted.
+     *         | getDirectory().updateAggregates(size - getSize(), 0)
      */
     @Raw @Model 
     private void setSize(int size) {
+        if (getDirectory() != null)
+            getDirectory().updateAggregates((long)size - this.size, 0);
         this.size = size;
     }
    
@@ -286,12 +344,44 @@ public class File extends Item {
      * @throws FileNotWritableException(this)
      *         This file is not writable.
      *         | ! isWritable()
+     * @throws EvictedException(this)
+     *         This file has been unloaded from the tree of a lazy snapshot.
+     *         | isEvicted()
      */
     @Model 
     private void changeSize(int delta) throws NotWritableException{
         if (isWritable()) {
-            setSize(getSize()+delta);
-            setModificationTime();   
+        	long sequence;
+        	//the structure lock keeps the ancestors of this file fixed while the delta is
+        	//added to their aggregates, a directory with items below it is only moved under
+        	//the write lock
+        	Lock structure = structureLock.readLock();
+        	structure.lock();
+        	try {
+	        	//the size is changed under the lock of the directory, so the directory can't be
+	        	//unloaded or changed while its aggregates are updated
+	        	Directory dir = lockDirectoryToChange();
+	        	try {
+	        		//the writability is checked again under the monitor under which setWritable
+	        		//changes and records it, so the journal never records a resize after the
+	        		//file has been made read-only
+	        		synchronized (this) {
+	        			if (!isWritable())
+	        				throw new NotWritableException(this);
+			            setSize(getSize()+delta);
+			            setModificationTime();
+			            if (dir != null)
+			            	dir.markChanged();
+			            sequence = Journal.logResize(this, delta);
+	        		}
+		            Watch.changed(ChangeEvent.Kind.SIZE_CHANGED, this, dir, null, delta);
+	        	} finally {
+	        		unlockDirectory(dir);
+	        	}
+        	} finally {
+        		structure.unlock();
+        	}
+            Journal.awaitDurable(sequence);
         } else {
         	throw new NotWritableException(this);
         }
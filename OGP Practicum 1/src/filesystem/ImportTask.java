@@ -0,0 +1,188 @@
+package filesystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A fork/join task that mirrors the entries of a directory of the real file system,
+ * and forks a task for every subdirectory among them.
+ *
+ * The children of the directory are created as roots, sorted on their names and
+ * registered in the directory in one batch once all the tasks of its subdirectories
+ * have finished. When two entries get the same name, the directory is kept rather than
+ * the file, and of two files the one with the lower type identifier is kept.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class ImportTask extends RecursiveTask<List<Item>> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Variable referencing the order in which entries with the same name are kept.
+	 */
+	private static final Comparator<Item> ORDER = new Comparator<Item>() {
+		@Override
+		public int compare(Item item1, Item item2) {
+			int result = item1.compareName(item2);
+			if (result != 0)
+				return result;
+			if (item1 instanceof Directory || item2 instanceof Directory)
+				return (item1 instanceof Directory ? 0 : 1) - (item2 instanceof Directory ? 0 : 1);
+			return Integer.compare(((File)item1).getTypeId(), ((File)item2).getTypeId());
+		}
+	};
+
+	private static final LinkOption[] NO_FOLLOW = { LinkOption.NOFOLLOW_LINKS };
+
+	private final Importer importer;
+
+	/**
+	 * Variable referencing the directory to register the children in,
+	 * null if the children are returned as roots.
+	 */
+	private final Directory dir;
+
+	private final Path path;
+
+	/**
+	 * Initialize a new task that mirrors the entries of the directory at the given path.
+	 * @param 	dir
+	 * 			the directory to register the mirrored children in, with an up to date
+	 * 			ancestry and not yet shared with other threads, or null
+	 */
+	ImportTask(Importer importer, Directory dir, Path path) {
+		this.importer = importer;
+		this.dir = dir;
+		this.path = path;
+	}
+
+	/**
+	 * Returns the mirrored children, sorted on their names.
+	 * @throws	UncheckedIOException
+	 * 			Throws this exception when the directory, or a directory below it,
+	 * 			can not be listed for an other reason than being denied access.
+	 */
+	@Override
+	protected List<Item> compute() throws UncheckedIOException {
+		boolean isPosix = path.getFileSystem().supportedFileAttributeViews().contains("posix");
+		ArrayList<Item> children = new ArrayList<Item>();
+		long nbSkipped = 0;
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+			for (Path entry : entries) {
+				Item child;
+				try {
+					child = isPosix ? mirror(entry, Files.readAttributes(entry, PosixFileAttributes.class, NO_FOLLOW))
+							: mirror(entry, Files.readAttributes(entry, BasicFileAttributes.class, NO_FOLLOW));
+				} catch (NoSuchFileException e) {
+					child = null; //the entry has been removed in the mean time
+				}
+				if (child == null)
+					nbSkipped++;
+				else
+					children.add(child);
+			}
+		} catch (AccessDeniedException e) {
+			nbSkipped++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		Collections.sort(children, ORDER);
+		ArrayList<Item> sorted = new ArrayList<Item>(children.size());
+		ArrayList<ImportTask> tasks = new ArrayList<ImportTask>();
+		long nbFiles = 0;
+		long nbDirectories = 0;
+		for (Item child : children) {
+			if (!sorted.isEmpty() && sorted.get(sorted.size()-1).compareName(child) == 0) {
+				nbSkipped++;
+				continue;
+			}
+			if (dir != null)
+				child.attachLoaded(dir);
+			sorted.add(child);
+			if (child instanceof Directory) {
+				nbDirectories++;
+				// a directory has the name of the entry it mirrors
+				tasks.add(new ImportTask(importer, (Directory)child, path.resolve(child.getName())));
+			} else {
+				nbFiles++;
+			}
+		}
+		importer.count(nbFiles, nbDirectories, nbSkipped);
+
+		invokeAll(tasks);
+		for (ImportTask task : tasks)
+			task.join();
+		if (dir != null)
+			dir.setLoadedChildren(sorted);
+		return Collections.unmodifiableList(sorted);
+	}
+
+	/**
+	 * Returns a new root item that mirrors the entry at the given path with the given
+	 * attributes, null if the entry is skipped.
+	 */
+	private Item mirror(Path entry, PosixFileAttributes attributes) {
+		return mirror(entry, attributes, attributes.permissions().contains(PosixFilePermission.OWNER_WRITE));
+	}
+
+	/**
+	 * Returns a new root item that mirrors the entry at the given path with the given
+	 * attributes, null if the entry is skipped.
+	 */
+	private Item mirror(Path entry, BasicFileAttributes attributes) {
+		return mirror(entry, attributes, Files.isWritable(entry));
+	}
+
+	private Item mirror(Path entry, BasicFileAttributes attributes, boolean writable) {
+		String name = entry.getFileName().toString();
+		if (attributes.isDirectory()) {
+			if (!NameCodec.isValid(name))
+				return null;
+			return new Directory(NameCodec.encode(name), writable ? Item.WRITABLE : 0,
+					getCreationTime(attributes), getModificationTime(attributes), false);
+		}
+		int typeId = importer.getTypeId(name);
+		if (!attributes.isRegularFile() || typeId == -1 || attributes.size() > File.getMaximumSize())
+			return null;
+		name = name.substring(0, name.lastIndexOf('.'));
+		if (!NameCodec.isValid(name))
+			return null;
+		return new File(NameCodec.encode(name), File.getFlags(writable, typeId),
+				getCreationTime(attributes), getModificationTime(attributes), (int)attributes.size());
+	}
+
+	/**
+	 * Returns the creation time of the entry with the given attributes, which is never
+	 * later than its modification time.
+	 */
+	private static long getCreationTime(BasicFileAttributes attributes) {
+		return Math.min(attributes.creationTime().toMillis(), attributes.lastModifiedTime().toMillis());
+	}
+
+	/**
+	 * Returns the modification time of the entry with the given attributes, or
+	 * NOT_MODIFIED if it has not been modified after it was created.
+	 */
+	private static long getModificationTime(BasicFileAttributes attributes) {
+		long time = attributes.lastModifiedTime().toMillis();
+		return time > getCreationTime(attributes) ? time : Item.NOT_MODIFIED;
+	}
+}
@@ -0,0 +1,227 @@
+package filesystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of importers that mirror directory hierarchies of the real file system.
+ *
+ * An importer walks a hierarchy in a pool with a bounded number of worker threads,
+ * one task per directory. The files in the hierarchy become files of this model:
+ * the extension of a file is mapped onto an allowed type, and the name of the file
+ * without its extension becomes the name of the new file. The children of every
+ * directory are created, sorted and registered in one batch, instead of being added
+ * to the directory one by one.
+ *
+ * Entries that can not be mirrored are skipped and counted: symbolic links and other
+ * special files, files whose extension is not mapped onto a type, files larger than
+ * the maximum size, entries whose names are not valid, entries that have the same
+ * name in the model as an other entry of their directory, and the contents of
+ * directories that can not be read.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+public final class Importer {
+
+	/**
+	 * Variable registering the number of worker threads of this importer.
+	 */
+	private final int parallelism;
+
+	/**
+	 * Variable referencing for every mapped extension, in lower case, the identifier of its type.
+	 */
+	private final HashMap<String, Integer> typeIds = new HashMap<String, Integer>();
+
+	private final AtomicLong nbFiles = new AtomicLong();
+
+	private final AtomicLong nbDirectories = new AtomicLong();
+
+	private final AtomicLong nbSkipped = new AtomicLong();
+
+	/**
+	 * Initialize a new importer with the given number of worker threads.
+	 * @param 	parallelism
+	 * 			the number of worker threads
+	 * @post	The extension of every allowed type is mapped onto that type.
+	 * 			| for each type in File.getAllowedTypes(): new.getType(type) == type
+	 * @throws	IllegalArgumentException
+	 * 			Throws this exception when the given number of threads is not positive.
+	 * 			| parallelism <= 0
+	 */
+	public Importer(int parallelism) throws IllegalArgumentException {
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("The number of worker threads must be positive");
+		this.parallelism = parallelism;
+		for (String type : File.getAllowedTypes())
+			typeIds.put(type, TypeRegistry.getId(type));
+	}
+
+	/**
+	 * Initialize a new importer with a worker thread per available processor.
+	 * @effect	| this(Runtime.getRuntime().availableProcessors())
+	 */
+	public Importer() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Returns the number of worker threads of this importer.
+	 */
+	@Basic @Immutable
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Maps the given extension onto the given type.
+	 * @param 	extension
+	 * 			the extension to map, cases are ignored
+	 * @param 	type
+	 * 			the type of the files with the given extension
+	 * @post	| new.getType(extension) == type
+	 * @throws	TypeNotAllowedException
+	 * 			Throws this exception when the given type is not allowed.
+	 * 			| !File.isValidType(type)
+	 */
+	public synchronized void mapExtension(String extension, String type) throws TypeNotAllowedException {
+		if (!File.isValidType(type))
+			throw new TypeNotAllowedException(type);
+		typeIds.put(extension.toLowerCase(Locale.ROOT), TypeRegistry.getId(type));
+	}
+
+	/**
+	 * Returns the type the given extension is mapped onto.
+	 * @param 	extension
+	 * 			the extension, cases are ignored
+	 * @return	Returns null when the given extension is not mapped.
+	 */
+	public synchronized String getType(String extension) {
+		Integer id = typeIds.get(extension.toLowerCase(Locale.ROOT));
+		return id == null ? null : TypeRegistry.getType(id);
+	}
+
+	/**
+	 * Returns the identifier of the type of the file with the given name,
+	 * -1 if its extension is not mapped.
+	 */
+	int getTypeId(String fileName) {
+		int dot = fileName.lastIndexOf('.');
+		if (dot <= 0)
+			return -1;
+		Integer id = typeIds.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the number of files the last import of this importer has mirrored.
+	 */
+	public long getNbFiles() {
+		return nbFiles.get();
+	}
+
+	/**
+	 * Returns the number of directories the last import of this importer has mirrored,
+	 * including the directory it started from.
+	 */
+	public long getNbDirectories() {
+		return nbDirectories.get();
+	}
+
+	/**
+	 * Returns the number of entries the last import of this importer has skipped.
+	 * @note	An entry that is a directory counts once, whatever the number of entries below it.
+	 */
+	public long getNbSkipped() {
+		return nbSkipped.get();
+	}
+
+	/**
+	 * Registers the numbers of files, directories and skipped entries found in a directory.
+	 */
+	void count(long nbFiles, long nbDirectories, long nbSkipped) {
+		this.nbFiles.addAndGet(nbFiles);
+		this.nbDirectories.addAndGet(nbDirectories);
+		this.nbSkipped.addAndGet(nbSkipped);
+	}
+
+	/**
+	 * Mirrors the directory at the given path.
+	 * @param 	path
+	 * 			the path of the directory to mirror
+	 * @return	Returns a new root directory, with the name and writability of the directory
+	 * 			at the given path, that has a file or directory below it for every file or
+	 * 			directory below the given path that is not skipped. Every file has the name
+	 * 			of the file it mirrors without its extension, and the type its extension is
+	 * 			mapped onto. The items have the writability, size, creation and modification
+	 * 			times of the entries they mirror, a directory is not modified after it is created.
+	 * 			When the name of the directory at the given path is not valid, the new
+	 * 			root directory has a default name.
+	 * @throws	NotDirectoryException
+	 * 			Throws this exception when the given path is not a directory.
+	 * @throws	IOException
+	 * 			Throws this exception when the directory at the given path or a directory below
+	 * 			it can not be listed for an other reason than being denied access.
+	 * @note	The counts of this importer are reset.
+	 */
+	public synchronized Directory importTree(Path path) throws IOException {
+		Path fileName = path.toAbsolutePath().normalize().getFileName();
+		Directory root = new Directory(fileName == null ? null : fileName.toString(), Files.isWritable(path));
+		mirror(root, path);
+		nbDirectories.incrementAndGet();
+		return root;
+	}
+
+	/**
+	 * Mirrors the entries of the directory at the given path into the given directory.
+	 * @param 	dir
+	 * 			the directory to add the mirrored items to
+	 * @param 	path
+	 * 			the path of the directory whose entries to mirror
+	 * @effect	The children of a mirror of the directory at the given path are added
+	 * 			to the given directory in one batch.
+	 * 			| dir.addAll(importTree(path).getChildren())
+	 * @throws	IOException
+	 * 			| importTree(path)
+	 * @throws	ItemsConflictException
+	 * 			Throws this exception, without adding any item, when some of the mirrored
+	 * 			items have the same name as a child of the given directory.
+	 * @note	The directory at the given path itself is not counted.
+	 */
+	public synchronized void importInto(Directory dir, Path path) throws IOException, ItemsConflictException {
+		dir.addAll(mirror(null, path));
+	}
+
+	/**
+	 * Mirrors the entries of the directory at the given path in the worker pool of this importer.
+	 * @param 	dir
+	 * 			the directory to register the mirrored children in, or null
+	 * @return	Returns the mirrored children, sorted on their names.
+	 */
+	private List<Item> mirror(Directory dir, Path path) throws IOException {
+		if (!Files.isDirectory(path))
+			throw new NotDirectoryException(path.toString());
+		nbFiles.set(0);
+		nbDirectories.set(0);
+		nbSkipped.set(0);
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return pool.invoke(new ImportTask(this, dir, path));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -2,7 +2,12 @@ package filesystem;
 
 import be.kuleuven.cs.som.annotate.*;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A class of items.
@@ -81,9 +86,32 @@ public class Item {
      *          | new.getModificationTime() == null
      */
 	public Item(String name, boolean writable) {
+        this.creationTime = System.currentTimeMillis();
         setName(name);
         setWritable(writable);
     }
+	
+	/**
+	 * Initialize a new root item with the given state, as read from a snapshot.
+	 * 
+	 * @param 	name
+	 * 			The encoded name of the new item.
+	 * @param 	flags
+	 * 			The flags of the new item.
+	 * @param 	creationTime
+	 * 			The creation time of the new item, in milliseconds since the epoch.
+	 * @param 	modificationTime
+	 * 			The modification time of the new item, in milliseconds since the epoch,
+	 * 			or Long.MIN_VALUE if the new item has not been modified.
+	 * @note	The given state is not checked, the caller must check it.
+	 */
+	@Raw
+	Item(long[] name, byte flags, long creationTime, long modificationTime) {
+		this.creationTime = creationTime;
+		this.name = name;
+		this.flags = flags;
+		this.modificationTime = modificationTime;
+	}
     
     
     
@@ -92,17 +120,41 @@ public class Item {
      **********************************************************/
 
     /**
-     * Variable referencing the name of this item.
+     * Variable referencing the name of this item, encoded by NameCodec.
      * @note		See Coding Rule 32, for information on the initialization of fields.
      */
-    private String name = null;
+    private volatile long[] name = null;
+
+    /**
+     * Variable referencing the name of this item as a string, once it has been asked for.
+     * @note		The string is only used while it equals the encoded name, so it never
+     * 				has to be cleared when the name changes.
+     */
+    private volatile String decodedName = null;
 
     /**
      * Return the name of this item.
      * @note		See Coding Rule 19 for the Basic annotation.
+     * @note		The name is stored in its encoded form, it is decoded once and then
+     * 				returned again until the name changes.
      */
     @Raw @Basic 
     public String getName() {
+        long[] name = this.name;
+        if (name == null)
+        	return null;
+        String decodedName = this.decodedName;
+        if (decodedName == null || !NameCodec.equals(name, decodedName, false)) {
+        	decodedName = NameCodec.decode(name);
+        	this.decodedName = decodedName;
+        }
+        return decodedName;
+    }
+    
+    /**
+     * Return the name of this item, encoded by NameCodec.
+     */
+    long[] getEncodedName() {
         return name;
     }
 
@@ -118,7 +170,7 @@ public class Item {
      * 			|	(name != null) && name.matches("[a-zA-Z_0-9.-]+")
      */
     public static boolean isValidName(String name) {
-        return (name != null && name.matches("[a-zA-Z_0-9.-]+"));
+        return NameCodec.isValid(name);
     }
     
     /**
@@ -136,9 +188,9 @@ public class Item {
     @Raw @Model 
     private void setName(String name) {
         if (isValidName(name)) {
-        		this.name = name;
+        		this.name = NameCodec.encode(name);
         } else {
-        		this.name = getDefaultName();
+        		this.name = NameCodec.encode(getDefaultName());
         }
     }
     
@@ -162,30 +214,29 @@ public class Item {
      * 				Returns -1 when the name is alphabetically ranked lower than the other name
      */
     protected int compareName (String other) {
-    	String name1 = this.getName();
-    	String name2 = other;
-    	
-        int lmin = Math.min(name1.length(), name2.length()); 
-  
-        for (int i = 0; i < lmin; i++) {
-            int name1_ch = (int)name1.charAt(i); 
-            int name2_ch = (int)name2.charAt(i);
-            
-            
-            // diff on char
-            if (name1_ch != name2_ch) {
-                return name1_ch > name2_ch ? 1 : -1;
-            } 
-        } 
-  
-        // diff on length
-        if (name1.length() != name2.length()) { 
-            return name1.length() > name2.length() ? 1 : -1; 
-        } 
-        // both equal
-        else {
-            return 0; 
-        } 
+    	return NameCodec.compare(this.name, other);
+    }
+    
+    /**
+     * Compares the name of this item with the name of the other item, eight characters at a time
+     * @param other	The item to compare with
+     * @return		Returns 1 when the name is alphabetically ranked higher than the other name
+     * 				Returns 0 when the name is alphabetically equal than the other name
+     * 				Returns -1 when the name is alphabetically ranked lower than the other name
+     */
+    int compareName (Item other) {
+    	return NameCodec.compare(this.name, other.name);
+    }
+
+    /**
+     * Compares the name of this item with the given encoded name, eight characters at a time
+     * @param other	The encoded name to compare with
+     * @return		Returns 1 when the name is alphabetically ranked higher than the other name
+     * 				Returns 0 when the name is alphabetically equal than the other name
+     * 				Returns -1 when the name is alphabetically ranked lower than the other name
+     */
+    int compareName (long[] other) {
+    	return NameCodec.compare(this.name, other);
     }
 
     /**
@@ -207,28 +258,56 @@ public class Item {
      *          | ! isWritable() 
      * @throws  AlreadyExistsException(this)
      *          An item in this directory has the same name
-     *          | this.getDirectory().getItem(name) != null
+     *          | !this.getDirectory().canHaveAsChildName(name, this)
+     * @throws  EvictedException(this)
+     *          This item has been unloaded from the tree of a lazy snapshot
+     *          | isEvicted()
      */
     public void changeName(String name) throws NotWritableException, AlreadyExistsException {
         if (isWritable()) {
-        	boolean canHave;
-        	if (this.getDirectory() != null) {
-        		canHave = this.getDirectory().getItem(name) == null;
-        	} else {
-        		canHave = true;
+        	long start = Metrics.start();
+        	long sequence = 0;
+        	try {
+        		//the check and the repositioning happen under the lock of the directory
+	        	Directory dir = lockDirectoryToChange();
+	        	try {
+	        		//the writability is checked again under the monitor under which setWritable
+	        		//changes and records it, so the journal never records a rename after the
+	        		//item has been made read-only
+	        		synchronized (this) {
+	        			if (!isWritable())
+	        				throw new NotWritableException(this);
+			        	boolean canHave;
+			        	if (dir != null) {
+			        		canHave = dir.canHaveAsChildName(name, this);
+			        	} else {
+			        		canHave = true;
+			        	}
+			            if (isValidName(name) && canHave){
+			            	//Move this item to its new position in its directory
+			            	if (dir != null) {
+			            		long[] oldName = getEncodedName();
+			            		int oldIndex = dir.getIndexOf(this);
+			            		setName(name);
+			            		dir.repositionChild(this, oldName, oldIndex);
+			            		Watch.changed(ChangeEvent.Kind.RENAMED, this, dir, NameCodec.decode(oldName), 0);
+			            	} else {
+			            		setName(name);
+			            	}
+	            	
+			                setModificationTime();
+			                sequence = Journal.logRename(this);
+			            } else if (!canHave) {
+			            	throw new AlreadyExistsException(dir, this);
+			            }
+	        		}
+	        	} finally {
+	        		unlockDirectory(dir);
+	        	}
+        	} finally {
+        		Metrics.stop(Metrics.Operation.CHANGE_NAME, start);
         	}
-            if (isValidName(name) && canHave){
-            	setName(name);
-            	//Reinsert this item
-            	if (this.getDirectory() != null) {
-            		this.getDirectory().removeChild(this);
-                	this.getDirectory().addChild(this);
-            	}
-            	
-                setModificationTime();
-            } else if (!canHave) {
-            	throw new AlreadyExistsException(this.dir, this);
-            }
+        	Journal.awaitDurable(sequence);
         } else {
             throw new NotWritableException(this);
         }
@@ -241,15 +320,24 @@ public class Item {
      **********************************************************/
 
     /**
-     * Variable referencing the time of creation.
+     * Variable registering the time of creation, in milliseconds since the epoch.
      */
-    private final Date creationTime = new Date();
+    private final long creationTime;
    
     /**
      * Return the time at which this item was created.
+     * @note	A new Date object is returned on every call.
      */
     @Raw @Basic @Immutable
     public Date getCreationTime() {
+        return new Date(creationTime);
+    }
+
+    /**
+     * Return the time at which this item was created, in milliseconds since the epoch.
+     */
+    @Raw @Immutable
+    long getCreationMillis() {
         return creationTime;
     }
 
@@ -276,18 +364,35 @@ public class Item {
      **********************************************************/
 
     /**
-     * Variable referencing the time of the last modification,
-     * possibly null.
+     * Variable registering the value of modificationTime for an item
+     * that has not yet been modified.
      */
-    private Date modificationTime = null;
+    static final long NOT_MODIFIED = Long.MIN_VALUE;
+    
+    /**
+     * Variable registering the time of the last modification, in milliseconds
+     * since the epoch, or NOT_MODIFIED.
+     */
+    private volatile long modificationTime = NOT_MODIFIED;
    
     /**
      * Return the time at which this item was last modified, that is
      * at which the name or size was last changed. If this item has
      * not yet been modified after construction, null is returned.
+     * @note	A new Date object is returned on every call.
      */
     @Raw @Basic
     public Date getModificationTime() {
+        long time = modificationTime;
+        return time == NOT_MODIFIED ? null : new Date(time);
+    }
+
+    /**
+     * Return the time at which this item was last modified, in milliseconds since 
+     * the epoch, or Long.MIN_VALUE if this item has not yet been modified.
+     */
+    @Raw
+    long getModificationMillis() {
         return modificationTime;
     }
 
@@ -305,7 +410,7 @@ public class Item {
      */
     public boolean canHaveAsModificationTime(Date date) {
         return (date == null) ||
-               ( (date.getTime() >= getCreationTime().getTime()) &&
+               ( (date.getTime() >= creationTime) &&
                  (date.getTime() <= System.currentTimeMillis()) );
     }
 
@@ -324,7 +429,17 @@ public class Item {
      */
     @Model 
     protected void setModificationTime() {
-        modificationTime = new Date();
+        modificationTime = System.currentTimeMillis();
+    }
+    
+    /**
+     * Set the modification time of this item to the given time, when a change is replayed.
+     * @param	time
+     * 			The time of the change, in milliseconds since the epoch.
+     */
+    @Model
+    void setModificationTime(long time) {
+        modificationTime = time;
     }
 
     /**
@@ -351,11 +466,13 @@ public class Item {
      */
     public boolean hasOverlappingUsePeriod(Item other) {
         if (other == null) return false;
-        if(getModificationTime() == null || other.getModificationTime() == null) return false;
-        return ! (getCreationTime().before(other.getCreationTime()) && 
-        	      getModificationTime().before(other.getCreationTime()) ) &&
-        	   ! (other.getCreationTime().before(getCreationTime()) && 
-        	      other.getModificationTime().before(getCreationTime()) );
+        long modificationTime = this.modificationTime;
+        long otherModificationTime = other.modificationTime;
+        if(modificationTime == NOT_MODIFIED || otherModificationTime == NOT_MODIFIED) return false;
+        return ! (creationTime < other.creationTime && 
+        	      modificationTime < other.creationTime ) &&
+        	   ! (other.creationTime < creationTime && 
+        	      otherModificationTime < creationTime );
     }
 
     
@@ -365,16 +482,22 @@ public class Item {
      **********************************************************/
    
     /**
-     * Variable registering whether or not this item is writable.
+     * Variable registering the flags of this item: the lowest bit registers 
+     * whether or not this item is writable, the other bits are free for subclasses.
+     */
+    volatile byte flags = WRITABLE;
+    
+    /**
+     * Variable registering the bit of the flags that registers the writability.
      */
-    private boolean isWritable = true;
+    static final byte WRITABLE = 1;
     
     /**
      * Check whether this item is writable.
      */
     @Raw @Basic
     public boolean isWritable() {
-        return isWritable;
+        return (flags & WRITABLE) != 0;
     }
 
     /**
@@ -385,16 +508,92 @@ public class Item {
      * @post  The given writability is registered as the new writability
      *        for this item.
      *        | new.isWritable() == isWritable
+     * @throws EvictedException(this)
+     *        This item has been unloaded from the tree of a lazy snapshot
+     *        | isEvicted()
      */
     @Raw 
     public void setWritable(boolean isWritable) {
-        this.isWritable = isWritable;
+        long sequence;
+        //the record of this item is part of the children of its directory in a lazy snapshot
+        Directory dir = lockDirectoryToChange();
+        try {
+	        synchronized (this) {
+		        if (isWritable)
+		        	flags |= WRITABLE;
+		        else
+		        	flags &= ~WRITABLE;
+		        sequence = Journal.logWritable(this);
+	        }
+	        Watch.changed(ChangeEvent.Kind.WRITABILITY_CHANGED, this, dir, null, 0);
+	        if (dir != null)
+	        	dir.markChanged();
+        } finally {
+        	unlockDirectory(dir);
+        }
+        Journal.awaitDurable(sequence);
     }
     
     /**********************************************************
      * directory
      **********************************************************/
-	Directory dir = null;
+	volatile Directory dir = null;
+	
+	/**
+	 * Variable registering the number of this item in the open journal, -1 if this item
+	 * is not in the tree of the open journal.
+	 */
+	int journalId = -1;
+	
+	/**
+	 * Variable registering whether this item has been unloaded from the tree of a lazy snapshot.
+	 * @note	It is only set while the directory of this item is locked, and never reset.
+	 */
+	volatile boolean evicted = false;
+	
+	/**
+	 * Checks whether this item has been unloaded from the tree of a lazy snapshot.
+	 * @return	Returns true if this item was below a directory whose children have been
+	 * 			unloaded, see Directory.evict(). Such an item can no longer be changed,
+	 * 			looking it up again gives the item loaded in its place.
+	 */
+	@Basic
+	public boolean isEvicted() {
+		return evicted;
+	}
+	
+	/**
+	 * Variable referencing the lock that guards the structure of all trees.
+	 * @note	Moving a directory with items below it (and with it a whole subtree) takes
+	 * 			the write lock, so no cycles can be created by concurrent moves and no item
+	 * 			is attached or detached while the ancestry of a subtree is recomputed. All
+	 * 			other changes to the directory of an item take the read lock. An empty
+	 * 			directory, like a new one, has no subtree and can not be an ancestor of
+	 * 			the directory it is moved to, it is locked itself while it is moved so
+	 * 			no items are added to it in the mean time. Changes to the size of a file take
+	 * 			the read lock, so the ancestors whose aggregates they update stay fixed. Changes
+	 * 			to the name or writability of a single item do not take the structure lock,
+	 * 			see lockDirectoryToChange.
+	 * 			The structure lock is always taken before any lock of a directory.
+	 */
+	static final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+	
+	/**
+	 * Returns the part of the structure lock to take to change the directory of this item.
+	 * @return	Returns the write lock for a directory with items below it, the read lock otherwise.
+	 */
+	Lock getStructureLock() {
+		return hasItemsBelow() ? structureLock.writeLock() : structureLock.readLock();
+	}
+	
+	/**
+	 * Checks whether there are items below this item.
+	 * @note	The result only stays valid while the caller holds the lock of this item,
+	 * 			if it is a directory, or the write lock of the structure.
+	 */
+	boolean hasItemsBelow() {
+		return this instanceof Directory && ((Directory)this).getNbItems() > 0;
+	}
     
     /**
      * Returns the current directory of this item
@@ -425,9 +624,166 @@ public class Item {
      */
 	@Raw
     private void setDirectory(Directory dir) throws IsOwnAncestorException, AlreadyExistsException  {
-		if (dir != null)
-			dir.addChild(this);
-    	this.dir = dir;
+		long start = Metrics.start();
+		long sequence = 0;
+		Lock structure = getStructureLock();
+		structure.lock();
+		try {
+			while (true) {
+				if (structure != structureLock.writeLock() && hasItemsBelow()) {
+					//items have been added to this directory in the mean time
+					structure.unlock();
+					structure = structureLock.writeLock();
+					structure.lock();
+				}
+				if (dir != null && !dir.isLoaded())
+					dir.load();
+				Directory oldDir = this.dir;
+				Directory.materializeCopies(oldDir);
+				Directory.materializeCopies(dir);
+				//an empty directory that is moved under the read lock is locked as well, see structureLock
+				Directory moved = this instanceof Directory && structure != structureLock.writeLock() ? (Directory)this : null;
+				//lock the directories in a global order, so opposing moves can't deadlock
+				List<Directory> locked = Directory.lockInOrder(Arrays.asList(oldDir, dir, moved));
+				try {
+					if (this.dir != oldDir || (dir != null && !dir.isLoaded()))
+						continue; //this item has been moved or the new directory unloaded in the mean time
+					if (moved != null && hasItemsBelow())
+						continue; //items have been added to this directory in the mean time
+					if (evicted)
+						throw new EvictedException(this);
+					//lets try to add child first
+					if (dir != null)
+						dir.addChild(this);
+					//we added the item to the new dir, lets remove it from the old (doesn't throw errors)
+					if (oldDir != null)
+						oldDir.removeChild(this);
+					this.dir = dir;
+					updateAncestry();
+					sequence = Journal.logMove(this, oldDir, dir);
+					Watch.moved(this, oldDir, dir);
+					break;
+				} finally {
+					Directory.unlockAll(locked);
+				}
+			}
+		} finally {
+			structure.unlock();
+			Metrics.stop(Metrics.Operation.MOVE, start);
+		}
+		//wait for the journal once no locks are held, so other changes can go on
+		Journal.awaitDurable(sequence);
+    }
+    
+    /**
+     * Locks the write lock of the directory of this item.
+     * @return	Returns the directory of this item, that is locked by the current thread
+     * 			and that this item is in as long as the lock is held.
+     * 			Returns null, without locking anything, when this item is a root item.
+     */
+    Directory lockDirectory() {
+    	while (true) {
+    		Directory dir = this.dir;
+    		if (dir == null)
+    			return null;
+    		dir.lock.writeLock().lock();
+    		if (dir == this.dir)
+    			return dir;
+    		// this item has been moved in the mean time
+    		dir.lock.writeLock().unlock();
+    	}
+    }
+    
+    /**
+     * Locks the write lock of the directory of this item, like lockDirectory, once no
+     * copies share the items above this item: they are materialized first.
+     * The caller may not hold any lock of a directory, and must call unlockDirectory
+     * once this item has been changed.
+     * @throws	EvictedException(this)
+     * 			Throws this exception, without locking anything, when this item has been
+     * 			unloaded from the tree of a lazy snapshot.
+     * 			| isEvicted()
+     * @note	The change is guarded by ChangeGuard while the directory is locked, so
+     * 			copies that are made in the mean time wait for it.
+     */
+    Directory lockDirectoryToChange() {
+    	while (true) {
+    		Directory dir = this.dir;
+    		Directory.materializeCopies(dir);
+    		Directory locked = lockDirectory();
+    		if (evicted) {
+    			if (locked != null)
+    				locked.lock.writeLock().unlock();
+    			throw new EvictedException(this);
+    		}
+    		if (locked == null)
+    			return null;
+    		if (locked == dir) {
+    			ChangeGuard.enter();
+    			if (!Directory.isShared(locked))
+    				return locked;
+    			// a copy has been made in the mean time
+    			ChangeGuard.leave();
+    		}
+    		// or this item has been moved in the mean time
+    		locked.lock.writeLock().unlock();
+    	}
+    }
+    
+    /**
+     * Locks the write lock of the directory of this item, like lockDirectoryToChange, and
+     * the write lock of this item as well if it is a directory, so no items are added to it
+     * before it is deleted. The locks are taken in the order of the identifiers of the directories.
+     * The caller may not hold any lock of a directory, and must call unlockToDelete
+     * once this item has been deleted.
+     * @return	Returns the locked directories, in the order in which they are locked.
+     * @throws	EvictedException(this)
+     * 			Throws this exception, without locking anything, when this item has been
+     * 			unloaded from the tree of a lazy snapshot.
+     * 			| isEvicted()
+     */
+    List<Directory> lockToDelete() {
+    	Directory self = this instanceof Directory ? (Directory)this : null;
+    	while (true) {
+    		Directory dir = this.dir;
+    		Directory.materializeCopies(dir);
+    		List<Directory> locked = Directory.lockInOrder(Arrays.asList(dir, self));
+    		if (evicted) {
+    			Directory.unlockAll(locked);
+    			throw new EvictedException(this);
+    		}
+    		if (dir == this.dir) {
+    			ChangeGuard.enter();
+    			if (!Directory.isShared(dir))
+    				return locked;
+    			// a copy has been made in the mean time
+    			ChangeGuard.leave();
+    		}
+    		// or this item has been moved in the mean time
+    		Directory.unlockAll(locked);
+    	}
+    }
+    
+    /**
+     * Unlocks the directories locked by lockToDelete.
+     * @param	locked
+     * 			the directories returned by lockToDelete
+     */
+    void unlockToDelete(List<Directory> locked) {
+    	ChangeGuard.leave();
+    	Directory.unlockAll(locked);
+    }
+    
+    /**
+     * Unlocks the directory locked by lockDirectoryToChange.
+     * @param	dir
+     * 			the directory returned by lockDirectoryToChange
+     */
+    void unlockDirectory(Directory dir) {
+    	if (dir != null) {
+    		ChangeGuard.leave();
+    		dir.lock.writeLock().unlock();
+    	}
     }
     
     /**
@@ -453,44 +809,232 @@ public class Item {
      * @throws 	IsOwnAncestorException
      * 			When you try to move the current item (when it's a directory) in one of his own
      * 			subfolders, the operation will be cancelled and this error will be thrown.
-     * 			
+     * @throws	EvictedException
+     * 			When this item or the given directory has been unloaded from the tree of a
+     * 			lazy snapshot, the operation will be cancelled and this error will be thrown.
      */
     public void move(Directory dir) throws AlreadyExistsException, IsOwnAncestorException {
-    	
-    	Directory oldDir = this.getDirectory();
-    	//lets try to add child first
+    	//the item is added to the new directory and removed from the old one atomically
     	this.setDirectory(dir);
-    	//we added the file to the new dir, lets remove it from the old (doesn't throw errors)
-    	if (oldDir != null)
-    		oldDir.removeChild(this);
-    	
     }
-    
+
+    /**
+     * Copies this item, with all items below it, to the given directory under the given name.
+     * @param 	target
+     * 			The directory of the copy, when target is null the copy is a root item.
+     * @param 	name
+     * 			The name of the copy.
+     * @return	Returns a new item of the same class as this item, with the given name or the
+     * 			default name if the given name is not valid, the writability of this item and
+     * 			a new creation time, that has not been modified.
+     * 			| result.getClass() == getClass() && result.getDirectory() == target &&
+     * 			| result.isWritable() == isWritable() && result.getModificationTime() == null
+     * @return	The items below the copy are copies of the items below this item at the time of
+     * 			the copy, with the same names, writability, sizes and times.
+     * @throws 	AlreadyExistsException
+     * 			When an item with the given name already exists in the given directory, no copy is made.
+     * @throws 	IsOwnAncestorException
+     * 			When the given directory can not contain the copy, no copy is made.
+     * @note	The copy of a directory shares the children of this directory, the copy takes
+     * 			constant time and memory. The children of the copy are only copied when they are
+     * 			read or changed, or before an item below this directory changes, a level at a time:
+     * 			only the directories on the way to a change are copied. Copying into the tree of
+     * 			a journal records every item, and copies all of them.
+     */
+    public Item copyTo(Directory target, String name) throws AlreadyExistsException, IsOwnAncestorException {
+    	long[] encodedName = NameCodec.encode(isValidName(name) ? name : getDefaultName());
+    	Item copy;
+    	//no item below this item is moved while the copy is made, changes to single items
+    	//are waited for, see Directory.share
+    	Lock structure = structureLock.writeLock();
+    	structure.lock();
+    	try {
+    		copy = copy(encodedName, System.currentTimeMillis(), NOT_MODIFIED);
+    	} finally {
+    		structure.unlock();
+    	}
+    	if (target != null) {
+    		try {
+    			copy.move(target);
+    		} catch (RuntimeException e) {
+    			if (copy instanceof Directory)
+    				((Directory)copy).unshare();
+    			throw e;
+    		}
+    	}
+    	return copy;
+    }
+
+    /**
+     * Returns a new root item of the same class as this item, with the given name and times
+     * and the other state of this item. The caller must hold the structure lock.
+     */
+    Item copy(long[] name, long creationTime, long modificationTime) {
+    	return new Item(name, flags, creationTime, modificationTime);
+    }
+
     /**
      * Deletes this object and its associations
      * @post	This item is deleted from its directory and the item's directory is set to null
      * @throws 	NotWritableException
      * 			Throws this exception when the current file is not writable
+     * @throws	DirectoryNotEmptyException
+     * 			Throws this exception when this item is a directory that is not empty.
+     * 			| this instanceof Directory && ((Directory)this).getNbItems() > 0
+     * @throws	EvictedException(this)
+     * 			Throws this exception when this item has been unloaded from the tree of a lazy snapshot
+     * 			| isEvicted()
+     * @note	A directory is checked to be empty under its own lock, which addChild takes as well,
+     * 			so no items can be added to it before it is detached.
      */
-    public void delete() throws NotWritableException {
+    public void delete() throws DirectoryNotEmptyException, NotWritableException {
     	if (!isWritable())
     		throw new NotWritableException(this);
     	
-    	if (dir != null)
-    		dir.removeChild(this);
+    	long sequence = 0;
+    	Lock structure = structureLock.readLock();
+    	structure.lock();
+    	try {
+    		List<Directory> locked = lockToDelete();
+    		try {
+    			if (hasItemsBelow())
+    				throw new DirectoryNotEmptyException((Directory)this);
+    			Directory dir = this.dir;
+    			if (dir != null) {
+    				//checked again under the monitor under which setWritable records the writability
+    				synchronized (this) {
+    					if (!isWritable())
+    						throw new NotWritableException(this);
+	    				dir.removeChild(this);
+	    				this.dir = null;
+	    				sequence = Journal.logDelete(this, dir);
+    				}
+    				Watch.moved(this, dir, null);
+    			}
+    		} finally {
+    			unlockToDelete(locked);
+    		}
+    		updateAncestry();
+    	} finally {
+    		structure.unlock();
+    	}
+    	Journal.awaitDurable(sequence);
+    }
+
+    /**
+     * Makes this item a root item, while the subtree it belongs to is deleted at once.
+     * The caller must hold the write lock of the structure and of the directory of this item.
+     * @post	| new.getDirectory() == null && new.getDepth() == 0
+     * @note	The ancestry is reset here rather than recomputed, since the items
+     * 			below this item are released as well.
+     */
+    void release() {
     	this.dir = null;
+    	depth = 0;
+    	jump = this;
     }
-    
+
     /**
      * Returns the root item from the current item's tree
      * @return	Returns the root from the current item's tree.
      */
     public Item getRoot() {
-    	Item parent = this;
-    	while (parent.dir != null) {
-    		parent = parent.dir;
+    	return getAncestorAtDepth(0);
+    }
+    
+    /**********************************************************
+     * ancestry
+     **********************************************************/
+    
+    /**
+     * Variable registering the number of directories above this item.
+     */
+    private volatile int depth = 0;
+    
+    /**
+     * Variable referencing an ancestor of this item to skip to when looking up
+     * an ancestor, this item itself for a root item.
+     * @note	The jump pointers form a skew binary structure: following jump pointers
+     * 			and directories, any ancestor is reached in a number of steps that is
+     * 			logarithmic in the depth of this item.
+     */
+    private volatile Item jump = this;
+    
+    /**
+     * Returns the number of directories above this item.
+     * @return	Returns 0 for a root item.
+     */
+    @Basic
+    public int getDepth() {
+    	return depth;
+    }
+    
+    /**
+     * Returns the ancestor of this item at the given depth.
+     * @param 	depth
+     * 			The depth of the ancestor
+     * @return	Returns this item when the given depth is the depth of this item.
+     * 			Returns null when the given depth is negative or larger than the depth of this item.
+     */
+    Item getAncestorAtDepth(int depth) {
+    	if (depth < 0 || depth > this.depth)
+    		return null;
+    	Item ancestor = this;
+    	while (ancestor.depth > depth) {
+    		if (ancestor.jump.depth >= depth)
+    			ancestor = ancestor.jump;
+    		else
+    			ancestor = ancestor.dir;
     	}
-    	
-    	return parent;
+    	return ancestor;
+    }
+    
+    /**
+     * Recomputes the depth and jump pointer of this item and of all items below it,
+     * after this item has been attached to a new directory.
+     */
+    void updateAncestry() {
+    	ArrayDeque<Item> stack = new ArrayDeque<Item>();
+    	stack.push(this);
+    	while (!stack.isEmpty()) {
+    		Item item = stack.pop();
+    		item.computeAncestry();
+    		// the children of a directory are not yet initialized while it is being constructed
+    		if (item instanceof Directory && ((Directory)item).children != null) {
+    			for (Item child : ((Directory)item).children)
+    				stack.push(child);
+    		}
+    	}
+    }
+    
+    /**
+     * Computes the depth and jump pointer of this item from those of its directory.
+     */
+    private void computeAncestry() {
+    	Item parent = this.dir;
+    	if (parent == null) {
+    		depth = 0;
+    		jump = this;
+    	} else {
+    		depth = parent.depth + 1;
+    		Item parentJump = parent.jump;
+    		if (parent.depth - parentJump.depth == parentJump.depth - parentJump.jump.depth)
+    			jump = parentJump.jump;
+    		else
+    			jump = parent;
+    	}
+    }
+    
+    /**
+     * Registers the given directory as the directory of this item, without adding 
+     * this item to the children of that directory.
+     * @param 	dir
+     * 			The directory this item is loaded into, its ancestry must be up to date.
+     * @note	Only used while loading a tree that is not yet shared with other threads.
+     *			The directory must register its children with setLoadedChildren.
+     */
+    void attachLoaded(Directory dir) {
+    	this.dir = dir;
+    	computeAncestry();
     }
 }
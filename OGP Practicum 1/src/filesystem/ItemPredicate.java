@@ -0,0 +1,258 @@
+package filesystem;
+
+import java.util.Date;
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of composable conditions on items, used to query the items below a directory.
+ *
+ * Besides testing a single item, a predicate can tell from the aggregates of a
+ * directory (its total size, number of files and number of files per type) that
+ * no item below that directory can satisfy it. Queries skip such directories
+ * without visiting them.
+ *
+ * Predicates are immutable and can be shared between threads.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@Immutable
+public abstract class ItemPredicate {
+
+	/**
+	 * Checks whether the given item satisfies this predicate.
+	 * @param 	item
+	 * 			the item to check
+	 */
+	public abstract boolean test(Item item);
+
+	/**
+	 * Checks whether an item below the given directory may satisfy this predicate.
+	 * @param 	dir
+	 * 			the directory to check
+	 * @return	False only if no item in the given directory or its subdirectories
+	 * 			can satisfy this predicate.
+	 */
+	boolean mayMatchBelow(Directory dir) {
+		return true;
+	}
+
+	/**
+	 * Returns a predicate that is satisfied by the items that satisfy both this predicate
+	 * and the given predicate.
+	 * @param 	other
+	 * 			the other predicate
+	 */
+	public ItemPredicate and(final ItemPredicate other) {
+		final ItemPredicate first = this;
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				return first.test(item) && other.test(item);
+			}
+
+			@Override
+			boolean mayMatchBelow(Directory dir) {
+				return first.mayMatchBelow(dir) && other.mayMatchBelow(dir);
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate that is satisfied by the items that satisfy this predicate,
+	 * the given predicate or both.
+	 * @param 	other
+	 * 			the other predicate
+	 */
+	public ItemPredicate or(final ItemPredicate other) {
+		final ItemPredicate first = this;
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				return first.test(item) || other.test(item);
+			}
+
+			@Override
+			boolean mayMatchBelow(Directory dir) {
+				return first.mayMatchBelow(dir) || other.mayMatchBelow(dir);
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate that is satisfied by the items that do not satisfy this predicate.
+	 * @note	The negation never rules out a directory.
+	 */
+	public ItemPredicate negate() {
+		final ItemPredicate original = this;
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				return !original.test(item);
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate that tests items with the given condition.
+	 * @param 	condition
+	 * 			the condition to test
+	 * @note	The returned predicate never rules out a directory.
+	 */
+	public static ItemPredicate of(final java.util.function.Predicate<? super Item> condition) {
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				return condition.test(item);
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate that is satisfied by all files.
+	 */
+	public static ItemPredicate isFile() {
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				return item instanceof File;
+			}
+
+			@Override
+			boolean mayMatchBelow(Directory dir) {
+				return dir.getTotalNbFiles() > 0;
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate that is satisfied by all directories.
+	 */
+	public static ItemPredicate isDirectory() {
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				return item instanceof Directory;
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate that is satisfied by the files that are larger than the given size.
+	 * @param 	size
+	 * 			the size to compare with (in bytes)
+	 */
+	public static ItemPredicate sizeGreaterThan(final long size) {
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				return item instanceof File && ((File)item).getSize() > size;
+			}
+
+			@Override
+			boolean mayMatchBelow(Directory dir) {
+				// a file larger than the given size makes the total size larger as well
+				return dir.getTotalSize() > size;
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate that is satisfied by the files that are not larger than the given size.
+	 * @param 	size
+	 * 			the size to compare with (in bytes)
+	 */
+	public static ItemPredicate sizeAtMost(final long size) {
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				return item instanceof File && ((File)item).getSize() <= size;
+			}
+
+			@Override
+			boolean mayMatchBelow(Directory dir) {
+				return dir.getTotalNbFiles() > 0;
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate that is satisfied by the files of one of the given types.
+	 * @param 	types
+	 * 			the types to look for
+	 * @throws 	TypeNotAllowedException
+	 * 			Throws this exception when one of the given types is not valid
+	 * 			| for some type in types: !File.isValidType(type)
+	 */
+	public static ItemPredicate typeIn(String... types) throws TypeNotAllowedException {
+		final boolean[] isWanted = new boolean[TypeRegistry.getNbTypes()];
+		for (String type : types) {
+			int id = TypeRegistry.getId(type);
+			if (id == -1)
+				throw new TypeNotAllowedException(type);
+			isWanted[id] = true;
+		}
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				if (!(item instanceof File))
+					return false;
+				int id = ((File)item).getTypeId();
+				return id != -1 && isWanted[id];
+			}
+
+			@Override
+			boolean mayMatchBelow(Directory dir) {
+				for (int id = 0; id < isWanted.length; id++) {
+					if (isWanted[id] && dir.peekCountByType(id) > 0)
+						return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate that is satisfied by the items that were last modified after the given time.
+	 * @param 	time
+	 * 			the time to compare with
+	 * @note	Items that have not been modified do not satisfy the returned predicate.
+	 */
+	public static ItemPredicate modifiedAfter(Date time) {
+		final long millis = time.getTime();
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				return item.getModificationMillis() > millis;
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate that is satisfied by the items that were created after the given time.
+	 * @param 	time
+	 * 			the time to compare with
+	 */
+	public static ItemPredicate createdAfter(Date time) {
+		final long millis = time.getTime();
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				return item.getCreationMillis() > millis;
+			}
+		};
+	}
+
+	/**
+	 * Returns a predicate that is satisfied by the writable items.
+	 */
+	public static ItemPredicate isWritable() {
+		return new ItemPredicate() {
+			@Override
+			public boolean test(Item item) {
+				return item.isWritable();
+			}
+		};
+	}
+}
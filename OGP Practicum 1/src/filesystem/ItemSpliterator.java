@@ -0,0 +1,199 @@
+package filesystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the items below a directory, up to a maximum depth,
+ * in the order of a depth first walk over the children.
+ *
+ * The spliterator keeps a stack of frames, one for every directory being walked,
+ * and only reads the children of a directory when it reaches that directory.
+ * It splits on the lowest frame with items left, so every split hands out
+ * the largest available part of the tree.
+ *
+ * The spliterator works on snapshots of the children, items that are added, moved
+ * or removed during the walk may or may not be reported.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class ItemSpliterator implements Spliterator<Item> {
+
+	/**
+	 * A range of a children snapshot that is being walked.
+	 */
+	private static final class Frame {
+
+		private final List<Item> items;
+
+		private int position;
+
+		private final int end;
+
+		/**
+		 * Variable registering the depth of the items in this frame, 1 for the children
+		 * of the directory the walk started in.
+		 */
+		private final int depth;
+
+		/**
+		 * Variable registering whether the walk descends into the directories in this frame.
+		 */
+		private final boolean descends;
+
+		private Frame(List<Item> items, int position, int end, int depth, boolean descends) {
+			this.items = items;
+			this.position = position;
+			this.end = end;
+			this.depth = depth;
+			this.descends = descends;
+		}
+
+		private int getNbRemaining() {
+			return end - position;
+		}
+	}
+
+	private final int maxDepth;
+
+	/**
+	 * Variable referencing the frames of this spliterator, the frame that is walked last at the bottom.
+	 */
+	private final ArrayList<Frame> frames;
+
+	/**
+	 * Variable registering the estimated number of items left.
+	 */
+	private long estimate;
+
+	/**
+	 * Initialize a new spliterator over the items below the given directory, up to the given depth.
+	 * @param 	dir
+	 * 			the directory to walk
+	 * @param 	maxDepth
+	 * 			the maximum depth, 1 for the children of the given directory only
+	 */
+	ItemSpliterator(Directory dir, int maxDepth) {
+		this.maxDepth = maxDepth;
+		this.frames = new ArrayList<Frame>();
+		List<Item> children = dir.getChildren();
+		if (maxDepth > 0 && !children.isEmpty())
+			push(children, 1);
+		this.estimate = maxDepth == 1 ? children.size() : estimateBelow(dir, children);
+	}
+
+	private ItemSpliterator(int maxDepth, ArrayList<Frame> frames, long estimate) {
+		this.maxDepth = maxDepth;
+		this.frames = frames;
+		this.estimate = estimate;
+	}
+
+	/**
+	 * Returns an estimate of the number of items below the given directory: its
+	 * children and the files of its subdirectories.
+	 */
+	private static long estimateBelow(Directory dir, List<Item> children) {
+		return children.size() + dir.getTotalNbFiles();
+	}
+
+	/**
+	 * Adds a frame for the given children at the given depth on top of the stack.
+	 */
+	private void push(List<Item> children, int depth) {
+		frames.add(new Frame(children, 0, children.size(), depth, depth < maxDepth));
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Item> action) {
+		int top = frames.size() - 1;
+		if (top < 0)
+			return false;
+		Frame frame = frames.get(top);
+		Item item = frame.items.get(frame.position++);
+		// pop exhausted frames right away, so a deep chain of directories keeps the stack small
+		if (frame.position == frame.end)
+			frames.remove(top);
+		if (frame.descends && item instanceof Directory) {
+			List<Item> children = ((Directory)item).getChildren();
+			if (!children.isEmpty())
+				push(children, frame.depth + 1);
+		}
+		if (estimate > 0)
+			estimate--;
+		action.accept(item);
+		return true;
+	}
+
+	@Override
+	public Spliterator<Item> trySplit() {
+		for (int k = 0; k < frames.size(); k++) {
+			Frame frame = frames.get(k);
+			int nbRemaining = frame.getNbRemaining();
+			if (nbRemaining >= 2) {
+				// the prefix takes the frames above this one and the first half of this frame
+				int middle = frame.position + nbRemaining / 2;
+				ArrayList<Frame> prefix = new ArrayList<Frame>();
+				prefix.add(new Frame(frame.items, frame.position, middle, frame.depth, frame.descends));
+				prefix.addAll(frames.subList(k + 1, frames.size()));
+				frames.subList(k + 1, frames.size()).clear();
+				frame.position = middle;
+				return split(prefix);
+			}
+			if (nbRemaining == 1 && frame.descends && frame.items.get(frame.position) instanceof Directory) {
+				// the prefix takes the frames above this one and the last directory of this frame
+				// without its children, this spliterator continues with the children
+				Directory dir = (Directory)frame.items.get(frame.position);
+				List<Item> children = dir.getChildren();
+				if (children.size() < 2)
+					continue;
+				ArrayList<Frame> prefix = new ArrayList<Frame>();
+				prefix.add(new Frame(frame.items, frame.position, frame.end, frame.depth, false));
+				prefix.addAll(frames.subList(k + 1, frames.size()));
+				frames.subList(k, frames.size()).clear();
+				push(children, frame.depth + 1);
+				return split(prefix);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a new spliterator with the given frames, and divides the estimate between
+	 * that spliterator and this one according to the number of items in their frames.
+	 */
+	private ItemSpliterator split(ArrayList<Frame> prefix) {
+		long prefixItems = countRemaining(prefix);
+		long ownItems = countRemaining(frames);
+		long prefixEstimate = maxDepth == 1 ? prefixItems : estimate * prefixItems / Math.max(1, prefixItems + ownItems);
+		estimate = maxDepth == 1 ? ownItems : estimate - prefixEstimate;
+		return new ItemSpliterator(maxDepth, prefix, prefixEstimate);
+	}
+
+	private static long countRemaining(List<Frame> frames) {
+		long count = 0;
+		for (Frame frame : frames)
+			count += frame.getNbRemaining();
+		return count;
+	}
+
+	/**
+	 * Returns the estimated number of items left, never less than the number of
+	 * items left in the frames. The estimate is exact if the walk does not descend.
+	 */
+	@Override
+	public long estimateSize() {
+		return Math.max(estimate, countRemaining(frames));
+	}
+
+	@Override
+	public int characteristics() {
+		int characteristics = ORDERED | DISTINCT | NONNULL;
+		if (maxDepth == 1)
+			characteristics |= SIZED | SUBSIZED;
+		return characteristics;
+	}
+}
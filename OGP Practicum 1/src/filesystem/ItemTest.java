@@ -320,6 +320,76 @@ public class ItemTest {
 		assertThrows(IsOwnAncestorException.class, () -> {parentDir.move(childDir);});
 	}
 	
+	@Test
+	public void testMove_Concurrent() throws InterruptedException {
+		Directory otherDir = new Directory("otherDir");
+		Item[] items = new Item[50];
+		for (int i = 0; i < items.length; i++)
+			items[i] = new Item(i % 2 == 0 ? parentDir : otherDir, "item" + i, true);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int thread = t;
+			threads[t] = new Thread(() -> {
+				java.util.Random random = new java.util.Random(thread);
+				for (int i = 0; i < 5000; i++) {
+					Item item = items[random.nextInt(items.length)];
+					//opposing moves of items and of directories into each other
+					try {
+						item.move(item.getDirectory() == parentDir ? otherDir : parentDir);
+					} catch (AlreadyExistsException e) {
+						//the item has been moved by another thread in the mean time
+					}
+					try {
+						(thread % 2 == 0 ? otherDir : childDir).move(thread % 2 == 0 ? childDir : otherDir);
+					} catch (IsOwnAncestorException | AlreadyExistsException e) {
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		
+		for (Item item : items) {
+			Directory dir = item.getDirectory();
+			assertTrue(dir.hasAsItem(item));
+			assertFalse((dir == parentDir ? otherDir : parentDir).hasAsItem(item));
+		}
+		assertFalse(otherDir.isDirectOrIndirectSubdirectoryOf(childDir) 
+				&& childDir.isDirectOrIndirectSubdirectoryOf(otherDir));
+		assertEquals(otherDir.getDepth(), otherDir.getDirectory() == null ? 0 : otherDir.getDirectory().getDepth() + 1);
+	}
+	
+	@Test
+	public void testMove_ConcurrentEmptyDirectories() throws InterruptedException {
+		Directory otherDir = new Directory("otherDir");
+		Directory[] dirs = {new Directory(parentDir, "emptyDir"), new Directory(otherDir, "emptyDir")};
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int thread = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 5000; i++) {
+					//empty directories are moved under the read lock of the structure
+					Directory dir = dirs[thread % 2];
+					try {
+						dir.move(i % 2 == 0 ? dirs[1 - thread % 2] : (thread % 2 == 0 ? parentDir : otherDir));
+					} catch (IsOwnAncestorException | AlreadyExistsException e) {
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		
+		assertFalse(dirs[0].isDirectOrIndirectSubdirectoryOf(dirs[1]) 
+				&& dirs[1].isDirectOrIndirectSubdirectoryOf(dirs[0]));
+		for (Directory dir : dirs) {
+			assertTrue(dir.getDirectory().hasAsItem(dir));
+			assertEquals(dir.getDepth(), dir.getDirectory().getDepth() + 1);
+		}
+	}
+	
 	
 	@Test
 	public void testGetRoot_rootItem() {
@@ -331,6 +401,121 @@ public class ItemTest {
 		assertEquals(normalItem.getRoot(), parentDir);
 	}
 	
+	private static final String[] NAMES = {"a", "A", "b", "Z", "z", "0", "9", "_", ".", "-",
+			"a_b", "a.b", "a-b", "a0", "a9", "aB", "ab", "Ab",
+			"abcdefg", "abcdefgh", "abcdefgH", "abcdefgh_", "abcdefghi", "abcdefgi",
+			"abcdefghijklmno", "abcdefghijklmnop", "abcdefghijklmnoP", "abcdefghijklmnopq",
+			"ABCDEFGHIJKLMNOPQ", "new_item", "new_item.txt", "new-item"};
+	
+	/**
+	 * Compares the given names character by character, like compareName did on strings.
+	 */
+	private static int compareCharacters(String name1, String name2) {
+		int lmin = Math.min(name1.length(), name2.length());
+		for (int i = 0; i < lmin; i++) {
+			if (name1.charAt(i) != name2.charAt(i))
+				return name1.charAt(i) > name2.charAt(i) ? 1 : -1;
+		}
+		return Integer.signum(name1.length() - name2.length());
+	}
+	
+	@Test
+	public void testCompareName_EncodedOrder() {
+		for (String name1 : NAMES) {
+			Item item = new Item(name1, true);
+			assertEquals(NameCodec.decode(NameCodec.encode(name1)), name1);
+			assertEquals(item.getName(), name1);
+			for (String name2 : NAMES) {
+				int expected = compareCharacters(name1, name2);
+				assertEquals(NameCodec.compare(NameCodec.encode(name1), NameCodec.encode(name2)), expected);
+				assertEquals(NameCodec.compare(NameCodec.encode(name1), name2), expected);
+				assertEquals(item.compareName(new Item(name2, true)), expected);
+				assertEquals(item.compareName(name2), expected);
+			}
+		}
+	}
+	
+	@Test
+	public void testNameHash_AgreesWithEquals() {
+		for (boolean ignoreCase : new boolean[] {false, true}) {
+			for (String name1 : NAMES) {
+				long[] words1 = NameCodec.encode(name1);
+				assertEquals(NameCodec.hash(words1, ignoreCase), NameCodec.hash(name1, ignoreCase));
+				for (String name2 : NAMES) {
+					long[] words2 = NameCodec.encode(name2);
+					boolean expected = ignoreCase ? name1.equalsIgnoreCase(name2) : name1.equals(name2);
+					assertEquals(NameCodec.equals(words1, words2, ignoreCase), expected);
+					assertEquals(NameCodec.equals(words1, name2, ignoreCase), expected);
+					if (expected)
+						assertEquals(NameCodec.hash(words1, ignoreCase), NameCodec.hash(words2, ignoreCase));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testNameIndex_RemoveKeepsProbes() {
+		//names whose probes start at the same two adjacent slots of an index of 16 slots, so they form one cluster
+		java.util.List<String> names = new java.util.ArrayList<String>();
+		for (int i = 0; names.size() < 7; i++) {
+			String name = "item" + i;
+			int home = NameCodec.hash(name, false) & 15;
+			if (home == 3 || home == 4)
+				names.add(name);
+		}
+		for (int removed = 0; removed < names.size(); removed++) {
+			NameIndex index = new NameIndex(false);
+			Item[] items = new Item[names.size()];
+			for (int i = 0; i < items.length; i++) {
+				items[i] = new Item(names.get(i), true);
+				index.add(items[i]);
+			}
+			index.remove(items[removed]);
+			assertEquals(index.size(), items.length - 1);
+			assertNull(index.get(names.get(removed)));
+			for (int i = 0; i < items.length; i++) {
+				if (i != removed) {
+					assertSame(index.get(names.get(i)), items[i]);
+					assertSame(index.get(NameCodec.encode(names.get(i))), items[i]);
+				}
+			}
+			//removing the others in turn keeps the remaining items reachable as well
+			for (int i = 0; i < items.length; i++) {
+				if (i == removed)
+					continue;
+				index.remove(items[i]);
+				assertFalse(index.contains(names.get(i)));
+				for (int j = i + 1; j < items.length; j++) {
+					if (j != removed)
+						assertTrue(index.contains(names.get(j)));
+				}
+			}
+			assertEquals(index.size(), 0);
+		}
+	}
+	
+	@Test
+	public void testNameIndex_IgnoreCase() {
+		NameIndex index = new NameIndex(true);
+		Item lower = new Item("name.txt", true);
+		Item upper = new Item("NAME.txt", true);
+		index.add(lower);
+		index.add(upper);
+		assertEquals(index.count("Name.TXT", null), 2);
+		assertEquals(index.count(NameCodec.encode("name.TXT"), lower), 1);
+		index.remove(lower);
+		assertSame(index.get("name.txt"), upper);
+		assertFalse(new NameIndex(false).contains("name.txt"));
+	}
+	
+	@Test
+	public void testGetName_AfterChange() {
+		assertSame(normalItemRoot.getName(), normalItemRoot.getName());
+		normalItemRoot.changeName("renamed_item");
+		assertEquals(normalItemRoot.getName(), "renamed_item");
+		assertSame(normalItemRoot.getName(), normalItemRoot.getName());
+	}
+	
 	
 	private void sleep() {
         try {
@@ -0,0 +1,74 @@
+package filesystem;
+
+import java.util.List;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class for signaling illegal attempts to add several items to a directory at once.
+ * 
+ * @author 	Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version	1.0
+ */
+public class ItemsConflictException extends RuntimeException {
+
+	/**
+	 * Required because this class inherits from Exception
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	private final Directory dir;
+	private final List<Item> conflicts;
+
+	/**
+	 * Initialize this items conflict exception involving the
+	 * given directory and conflicting items.
+	 * 
+	 * @param 	dir
+	 * 			The directory to which the items were added.
+	 * @param	conflicts
+	 * 			The items that could not be added to the directory.
+	 * @post	The directory involved in the new items conflict exception
+	 * 			is set to the given directory.
+	 * 			| new.getDirectory() == dir
+	 * @post	The items involved in the new items conflict exception
+	 * 			are set to the given items.
+	 * 			| new.getConflicts() == conflicts
+	 */
+	@Raw
+	public ItemsConflictException(Directory dir, List<Item> conflicts) {
+		this.dir = dir;
+		this.conflicts = conflicts;
+	}
+	
+	/**
+	 * Return the directory involved in this items conflict exception.
+	 */
+	@Raw @Basic
+	public Directory getDirectory() {
+		return dir;
+	}
+	
+	/**
+	 * Return the items that could not be added in this items conflict exception.
+	 */
+	@Raw @Basic
+	public List<Item> getConflicts() {
+		return conflicts;
+	}
+	
+	/**
+	 * Return the names of the items that could not be added.
+	 */
+	@Override
+	public String getMessage() {
+		StringBuilder names = new StringBuilder();
+		for (Item conflict : conflicts) {
+			if (names.length() > 0)
+				names.append(", ");
+			names.append(conflict.getName());
+		}
+		return names.toString();
+	}
+	
+}
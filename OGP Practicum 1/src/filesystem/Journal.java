@@ -0,0 +1,797 @@
+package filesystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * A class of write-ahead journals of the changes to a tree of items.
+ *
+ * A journal records every change to the items below its root directory as a record
+ * in a file: the creation, renaming, moving and deleting of items, changes of the
+ * size of files, of writability and of case insensitive uniqueness. Recovery loads
+ * the latest snapshot and replays the journal on top of it.
+ *
+ * Items are identified by a number: the items in the snapshot are numbered in the
+ * order in which they are written, new items get the next numbers in the order in
+ * which their records are written. Every record holds the time of the change, so
+ * replaying a journal restores the modification times as well.
+ *
+ * Mutators only copy their record into a buffer. A writer thread writes all records
+ * in the buffer at once, and forces them to the disk according to the sync policy.
+ * With the policy ALWAYS a change returns once its record is on the disk, all changes
+ * that arrive while the disk is being forced are forced together (group commit).
+ *
+ * Only one journal can be open at a time.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+public final class Journal implements Closeable {
+
+	/**
+	 * An enumeration of the policies to force the journal to the disk.
+	 */
+	public enum SyncPolicy {
+		/**
+		 * Every change returns once its record is forced to the disk.
+		 */
+		ALWAYS,
+		/**
+		 * The journal is forced to the disk at a fixed interval, changes do not wait.
+		 * A crash loses at most the changes of the last interval.
+		 */
+		INTERVAL,
+		/**
+		 * The journal is written at a fixed interval but only forced to the disk by
+		 * checkpoint and close, the operating system decides when the records reach the disk.
+		 */
+		NEVER
+	}
+
+	/**
+	 * Variable referencing the open journal, null if there is none.
+	 */
+	static volatile Journal active = null;
+
+	/**
+	 * Variable registering the first sequence number of the next journal that is opened,
+	 * so sequence numbers are never reused between journals.
+	 */
+	private static long nextSequence = 1;
+
+	static final int MAGIC = 0x4F47504A;
+
+	static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 16;
+
+	private static final byte CREATE = 1;
+	private static final byte MOVE = 2;
+	private static final byte DETACH = 3;
+	private static final byte DELETE = 4;
+	private static final byte RENAME = 5;
+	private static final byte RESIZE = 6;
+	private static final byte WRITABLE = 7;
+	private static final byte CASE_INSENSITIVE_UNIQUE = 8;
+
+	private static final byte FILE = 0;
+	private static final byte DIRECTORY = 1;
+	private static final byte CASE_INSENSITIVE_DIRECTORY = 2;
+	private static final byte ITEM = 3;
+
+	private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Variable registering the number of buffered bytes from which mutators wake up the
+	 * writer, and the number of buffered bytes from which they wait for the writer.
+	 */
+	private static final int WAKE_UP_SIZE = 1 << 16;
+	private static final int MAXIMUM_BUFFER_SIZE = 1 << 24;
+
+	private final Directory root;
+
+	private final Path snapshotPath;
+
+	private final SyncPolicy policy;
+
+	private final long intervalNanos;
+
+	private final FileChannel channel;
+
+	/**
+	 * Variable referencing the lock that guards the buffers and the sequence numbers.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Variable referencing the condition the writer waits on for records to write.
+	 */
+	private final Condition hasRecords = lock.newCondition();
+
+	/**
+	 * Variable referencing the condition mutators wait on for the writer to make progress.
+	 */
+	private final Condition hasProgress = lock.newCondition();
+
+	/**
+	 * Variable referencing the buffer records are added to, and the buffer the writer writes from.
+	 */
+	private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+	private final CRC32 checksum = new CRC32();
+
+	/**
+	 * Variable registering the sequence number of the first record of this journal.
+	 */
+	private final long firstSequence;
+
+	/**
+	 * Variable registering the sequence number of the last record added to the buffer.
+	 */
+	private long appended;
+
+	/**
+	 * Variable registering the sequence number of the last record written to the file.
+	 */
+	private long written;
+
+	/**
+	 * Variable registering the sequence number of the last record forced to the disk.
+	 */
+	private long durable;
+
+	/**
+	 * Variable registering the sequence number up to which mutators or a checkpoint
+	 * have asked to force the journal.
+	 */
+	private long syncRequested;
+
+	/**
+	 * Variable registering the number of the next new item.
+	 */
+	private int nextId;
+
+	private boolean isClosed = false;
+
+	/**
+	 * Variable referencing the error the writer ran into, null as long as there is none.
+	 */
+	private IOException failure = null;
+
+	private final Thread writer;
+
+	private Journal(Directory root, Path snapshotPath, Path journalPath, SyncPolicy policy, long intervalMillis,
+			long firstSequence) throws IOException {
+		this.root = root;
+		this.snapshotPath = snapshotPath;
+		this.policy = policy;
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		this.firstSequence = firstSequence;
+		this.appended = firstSequence - 1;
+		this.written = firstSequence - 1;
+		this.durable = firstSequence - 1;
+		this.syncRequested = firstSequence - 1;
+		this.channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "journal writer");
+		this.writer.setDaemon(true);
+	}
+
+	/**
+	 * Opens a new journal for the given directory and all items below it.
+	 * @param 	root
+	 * 			the root directory of the tree to journal
+	 * @param 	snapshotPath
+	 * 			the path of the snapshots of the tree
+	 * @param 	journalPath
+	 * 			the path of the journal
+	 * @param 	policy
+	 * 			the policy to force the journal to the disk
+	 * @param 	intervalMillis
+	 * 			the interval at which the journal is written and forced, for the policies
+	 * 			INTERVAL and NEVER (in milliseconds)
+	 * @effect	A first checkpoint is taken, which writes a snapshot of the tree and
+	 * 			starts an empty journal.
+	 * @throws	IllegalStateException
+	 * 			Throws this exception when another journal is open.
+	 * @throws	IOException
+	 * 			Throws this exception when the snapshot or the journal can not be written.
+	 * @note	The tree may not be changed while the journal is opened.
+	 */
+	public static Journal open(Directory root, Path snapshotPath, Path journalPath, SyncPolicy policy,
+			long intervalMillis) throws IllegalStateException, IOException {
+		synchronized (Journal.class) {
+			if (active != null)
+				throw new IllegalStateException("Another journal is open");
+			Journal journal = new Journal(root, snapshotPath, journalPath, policy, intervalMillis, nextSequence);
+			try {
+				journal.startOver();
+			} catch (IOException e) {
+				journal.channel.close();
+				throw e;
+			}
+			journal.writer.start();
+			active = journal;
+			return journal;
+		}
+	}
+
+	/**
+	 * Writes a new snapshot of the tree and empties this journal.
+	 * @throws	IOException
+	 * 			Throws this exception when the journal or the snapshot can not be written.
+	 * @note	The tree may not be changed while a checkpoint is taken.
+	 */
+	public void checkpoint() throws IOException {
+		flush();
+		lock.lock();
+		try {
+			startOver();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes a snapshot, numbers the items in the order of the snapshot
+	 * and starts the journal over with a header that refers to the snapshot.
+	 */
+	private void startOver() throws IOException {
+		long stamp = Snapshot.write(root, snapshotPath);
+		nextId = 0;
+		root.journalId = nextId++;
+		Iterator<Item> items = root.stream().iterator();
+		while (items.hasNext())
+			items.next().journalId = nextId++;
+		channel.truncate(0);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putLong(stamp).flip();
+		channel.write(header, 0);
+		channel.position(HEADER_SIZE);
+		channel.force(true);
+	}
+
+	/**
+	 * Writes all records added so far and forces them to the disk.
+	 * @throws	IOException
+	 * 			Throws this exception when the journal can not be written.
+	 */
+	public void flush() throws IOException {
+		lock.lock();
+		try {
+			long target = appended;
+			syncRequested = Math.max(syncRequested, target);
+			hasRecords.signal();
+			while (durable < target && failure == null)
+				hasProgress.awaitUninterruptibly();
+			if (failure != null)
+				throw failure;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Flushes and closes this journal and stops journaling the tree.
+	 * @throws	IOException
+	 * 			Throws this exception when the journal can not be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (Journal.class) {
+			if (active != this)
+				return;
+			try {
+				flush();
+			} finally {
+				lock.lock();
+				try {
+					isClosed = true;
+					hasRecords.signal();
+				} finally {
+					lock.unlock();
+				}
+				try {
+					writer.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				channel.close();
+				forget(root);
+				nextSequence = appended + 1;
+				active = null;
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffered records until this journal is closed. Runs on the writer thread.
+	 */
+	private void write() {
+		long lastFlush = System.nanoTime();
+		while (true) {
+			ByteBuffer batch;
+			long batchEnd;
+			boolean mustSync;
+			lock.lock();
+			try {
+				while (!isClosed && !hasWork(lastFlush)) {
+					long elapsed = System.nanoTime() - lastFlush;
+					if (policy == SyncPolicy.ALWAYS)
+						hasRecords.awaitUninterruptibly();
+					else
+						hasRecords.awaitNanos(elapsed < intervalNanos ? intervalNanos - elapsed : intervalNanos);
+				}
+				if (isClosed && pending.position() == 0)
+					return;
+				batch = pending;
+				pending = spare;
+				spare = batch;
+				batchEnd = appended;
+				mustSync = policy == SyncPolicy.ALWAYS || syncRequested > durable || isClosed
+						|| (policy == SyncPolicy.INTERVAL && System.nanoTime() - lastFlush >= intervalNanos);
+				hasProgress.signalAll(); // the buffer has room again
+			} catch (InterruptedException e) {
+				continue;
+			} finally {
+				lock.unlock();
+			}
+
+			IOException error = null;
+			try {
+				batch.flip();
+				while (batch.hasRemaining())
+					channel.write(batch);
+				if (mustSync)
+					channel.force(false);
+				if (mustSync || policy == SyncPolicy.NEVER)
+					lastFlush = System.nanoTime();
+			} catch (IOException e) {
+				error = e;
+			} finally {
+				batch.clear();
+			}
+
+			lock.lock();
+			try {
+				if (error != null && failure == null)
+					failure = error;
+				written = batchEnd;
+				if (mustSync && error == null)
+					durable = batchEnd;
+				hasProgress.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the writer has something to do. The caller must hold the lock.
+	 * @param 	lastFlush
+	 * 			the time at which the journal was last forced, or last written for the policy NEVER
+	 */
+	private boolean hasWork(long lastFlush) {
+		if (syncRequested > durable || pending.position() >= WAKE_UP_SIZE)
+			return true;
+		boolean isDue = System.nanoTime() - lastFlush >= intervalNanos;
+		switch (policy) {
+		case INTERVAL:
+			return isDue && (pending.position() > 0 || written > durable);
+		case NEVER:
+			return isDue && pending.position() > 0;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Waits until the record with the given sequence number is forced to the disk,
+	 * if the sync policy of the open journal is ALWAYS.
+	 * @param 	sequence
+	 * 			the sequence number returned when the record was added, 0 if no record was added
+	 * @throws	UncheckedIOException
+	 * 			Throws this exception when the journal can not be written.
+	 * @note	The caller may not hold any lock of the tree, so other changes can go on.
+	 */
+	static void awaitDurable(long sequence) throws UncheckedIOException {
+		Journal journal = active;
+		if (sequence == 0 || journal == null || journal.policy != SyncPolicy.ALWAYS || sequence < journal.firstSequence)
+			return;
+		journal.lock.lock();
+		try {
+			while (journal.durable < sequence && journal.failure == null)
+				journal.hasProgress.awaitUninterruptibly();
+			if (journal.failure != null)
+				throw new UncheckedIOException(journal.failure);
+		} finally {
+			journal.lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks whether the given item is in the tree of this journal.
+	 */
+	private static boolean isJournaled(Item item) {
+		return item != null && item.journalId >= 0;
+	}
+
+	/**
+	 * Records that the given item has been moved from the given old directory to the given
+	 * new directory, or has been created in the given new directory if the old one is null.
+	 * The caller must hold the locks of both directories.
+	 * @return	Returns the sequence number of the last record that is added, 0 if none is added.
+	 * @note	An item that enters the tree of the journal is recorded with all the items below
+	 * 			it as new items, an item that leaves the tree is recorded as detached.
+	 */
+	static long logMove(Item item, Directory oldDir, Directory newDir) {
+		Journal journal = active;
+		if (journal == null)
+			return 0;
+		boolean wasJournaled = isJournaled(item);
+		boolean isJournaled = isJournaled(newDir);
+		if (wasJournaled && isJournaled)
+			return journal.append(MOVE, item, newDir.getModificationMillis(), newDir.journalId, null);
+		if (wasJournaled)
+			return journal.detach(DETACH, item, oldDir);
+		if (isJournaled)
+			return journal.create(item);
+		return 0;
+	}
+
+	/**
+	 * Records that the given item has been deleted from the given directory.
+	 * The caller must hold the lock of that directory.
+	 * @return	Returns the sequence number of the record, 0 if none is added.
+	 */
+	static long logDelete(Item item, Directory oldDir) {
+		Journal journal = active;
+		if (journal == null || !isJournaled(item))
+			return 0;
+		return journal.detach(DELETE, item, oldDir);
+	}
+
+	/**
+	 * Records the new name of the given item. The caller must hold the lock of its directory.
+	 * @return	Returns the sequence number of the record, 0 if none is added.
+	 */
+	static long logRename(Item item) {
+		Journal journal = active;
+		if (journal == null || !isJournaled(item))
+			return 0;
+		return journal.append(RENAME, item, item.getModificationMillis(), 0, item.getEncodedName());
+	}
+
+	/**
+	 * Records that the size of the given file has changed with the given delta.
+	 * @return	Returns the sequence number of the record, 0 if none is added.
+	 * @note	Deltas are recorded rather than sizes, so concurrent changes to the same file
+	 * 			give the same size when they are replayed in the order of their records.
+	 */
+	static long logResize(File file, int delta) {
+		Journal journal = active;
+		if (journal == null || !isJournaled(file))
+			return 0;
+		return journal.append(RESIZE, file, file.getModificationMillis(), delta, null);
+	}
+
+	/**
+	 * Records the writability of the given item. The caller must hold the monitor of the item.
+	 * @return	Returns the sequence number of the record, 0 if none is added.
+	 */
+	static long logWritable(Item item) {
+		Journal journal = active;
+		if (journal == null || !isJournaled(item))
+			return 0;
+		return journal.append(WRITABLE, item, 0, item.isWritable() ? 1 : 0, null);
+	}
+
+	/**
+	 * Records whether the names of the children of the given directory must be unique when
+	 * cases are ignored. The caller must hold the lock of the directory.
+	 * @return	Returns the sequence number of the record, 0 if none is added.
+	 */
+	static long logCaseInsensitiveUnique(Directory dir) {
+		Journal journal = active;
+		if (journal == null || !isJournaled(dir))
+			return 0;
+		return journal.append(CASE_INSENSITIVE_UNIQUE, dir, 0, dir.isCaseInsensitiveUnique() ? 1 : 0, null);
+	}
+
+	/**
+	 * Records the given item as removed from the given directory and from the tree,
+	 * and forgets the numbers of the item and all items below it.
+	 */
+	private long detach(byte operation, Item item, Directory oldDir) {
+		long sequence = append(operation, item, oldDir == null ? 0 : oldDir.getModificationMillis(), 0, null);
+		forget(item);
+		return sequence;
+	}
+
+	/**
+	 * Forgets the numbers of the given item and all items below it.
+	 */
+	private static void forget(Item item) {
+		item.journalId = -1;
+		if (item instanceof Directory) {
+			Iterator<Item> below = ((Directory)item).stream().iterator();
+			while (below.hasNext())
+				below.next().journalId = -1;
+		}
+	}
+
+	/**
+	 * Records the given item and all items below it as new items.
+	 */
+	private long create(Item item) {
+		long sequence = append(CREATE, item, item.getDirectory().getModificationMillis(), 0, null);
+		if (item instanceof Directory) {
+			Iterator<Item> below = ((Directory)item).stream().iterator();
+			while (below.hasNext()) {
+				Item next = below.next();
+				sequence = append(CREATE, next, next.getDirectory().getModificationMillis(), 0, null);
+			}
+		}
+		return sequence;
+	}
+
+	/**
+	 * Adds a record to the buffer.
+	 * @param 	operation
+	 * 			the operation of the record
+	 * @param 	item
+	 * 			the item the record is about, for a new item the record gives it a number
+	 * @param 	time
+	 * 			the modification time the change gave to the items it changed
+	 * @param 	argument
+	 * 			the number of the new directory, the size delta or the flag of the record
+	 * @param 	name
+	 * 			the new name, for a rename
+	 * @return	Returns the sequence number of the record.
+	 */
+	private long append(byte operation, Item item, long time, int argument, long[] name) {
+		lock.lock();
+		try {
+			if (isClosed)
+				return 0;
+			int nbWords = operation == CREATE ? item.getEncodedName().length : name == null ? 0 : name.length;
+			ensureRoom(64 + 8 * nbWords);
+			ByteBuffer buffer = pending;
+			int start = buffer.position();
+			buffer.position(start + 4);
+			if (operation == CREATE)
+				item.journalId = nextId++;
+			buffer.put(operation);
+			buffer.putInt(item.journalId);
+			buffer.putLong(time);
+			switch (operation) {
+			case CREATE:
+				buffer.putInt(item.getDirectory().journalId);
+				if (item instanceof Directory)
+					buffer.put(((Directory)item).isCaseInsensitiveUnique() ? CASE_INSENSITIVE_DIRECTORY : DIRECTORY);
+				else
+					buffer.put(item instanceof File ? FILE : ITEM);
+				buffer.put(item.flags);
+				putName(buffer, item.getEncodedName());
+				buffer.putLong(item.getCreationMillis());
+				buffer.putLong(item.getModificationMillis());
+				buffer.putInt(item instanceof File ? ((File)item).getSize() : 0);
+				break;
+			case MOVE:
+			case RESIZE:
+				buffer.putInt(argument);
+				break;
+			case RENAME:
+				putName(buffer, name);
+				break;
+			case WRITABLE:
+			case CASE_INSENSITIVE_UNIQUE:
+				buffer.put((byte)argument);
+				break;
+			default:
+				break;
+			}
+			int length = buffer.position() - start - 4;
+			buffer.putInt(start, length);
+			checksum.reset();
+			checksum.update(buffer.array(), start + 4, length);
+			buffer.putInt((int)checksum.getValue());
+			appended++;
+			if (policy == SyncPolicy.ALWAYS) {
+				syncRequested = appended;
+				hasRecords.signal();
+			} else if (buffer.position() >= WAKE_UP_SIZE) {
+				hasRecords.signal();
+			}
+			return appended;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static void putName(ByteBuffer buffer, long[] name) {
+		buffer.putChar((char)name.length);
+		for (long word : name)
+			buffer.putLong(word);
+	}
+
+	/**
+	 * Makes sure the pending buffer has room for the given number of bytes, waiting for the
+	 * writer if the buffer is full. The caller must hold the lock.
+	 */
+	private void ensureRoom(int nbBytes) {
+		while (pending.position() + nbBytes > MAXIMUM_BUFFER_SIZE && pending.position() > 0 && !isClosed) {
+			hasRecords.signal();
+			hasProgress.awaitUninterruptibly();
+		}
+		if (pending.remaining() < nbBytes) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + nbBytes));
+			pending.flip();
+			larger.put(pending);
+			pending = larger;
+		}
+	}
+
+	/**
+	 * Loads the snapshot at the given path and replays the journal at the given path on top of it.
+	 * @param 	snapshotPath
+	 * 			the path of the snapshot
+	 * @param 	journalPath
+	 * 			the path of the journal
+	 * @return	Returns the root directory of the tree as it was after the last change
+	 * 			in the journal that reached the disk. The journal is ignored when it does
+	 * 			not exist or when it belongs to an older snapshot.
+	 * @throws	IOException
+	 * 			Throws this exception when the snapshot or the journal can not be read,
+	 * 			or when the journal does not match the snapshot.
+	 * @note	A record that is cut off or damaged ends the journal, since it is the
+	 * 			last record that was being written when the journal stopped.
+	 */
+	public static Directory recover(Path snapshotPath, Path journalPath) throws IOException {
+		Directory root = Snapshot.read(snapshotPath);
+		if (!Files.exists(journalPath))
+			return root;
+		ArrayList<Item> items = new ArrayList<Item>();
+		items.add(root);
+		Iterator<Item> below = root.stream().iterator();
+		while (below.hasNext())
+			items.add(below.next());
+		try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE)
+				return root;
+			MappedInput input = new MappedInput(channel);
+			input.require(HEADER_SIZE);
+			if (input.buffer.getInt() != MAGIC)
+				throw new IOException(journalPath + " is not a journal");
+			int version = input.buffer.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported journal version " + version);
+			if (input.buffer.getLong() != Snapshot.readStamp(snapshotPath))
+				return root; // the snapshot was written after this journal was complete
+			CRC32 checksum = new CRC32();
+			while (input.remaining() >= 8) {
+				input.require(4);
+				int length = input.buffer.getInt();
+				if (length < 13 || length > input.remaining() - 4)
+					break;
+				input.require(length + 4);
+				ByteBuffer record = input.buffer.slice();
+				record.limit(length);
+				checksum.reset();
+				checksum.update(record.duplicate());
+				input.buffer.position(input.buffer.position() + length);
+				if (input.buffer.getInt() != (int)checksum.getValue())
+					break;
+				try {
+					replay(record, items);
+				} catch (RuntimeException e) {
+					throw new IOException(journalPath + " does not match " + snapshotPath, e);
+				}
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Applies the given record to the given items, indexed on their numbers.
+	 */
+	private static void replay(ByteBuffer record, List<Item> items) throws IOException {
+		byte operation = record.get();
+		int id = record.getInt();
+		long time = record.getLong();
+		if (operation == CREATE) {
+			Directory dir = (Directory)items.get(record.getInt());
+			byte kind = record.get();
+			byte flags = record.get();
+			long[] name = getName(record);
+			long creationTime = record.getLong();
+			long modificationTime = record.getLong();
+			int size = record.getInt();
+			if (id != items.size() || !NameCodec.isValid(name) || kind < FILE || kind > ITEM)
+				throw new IOException("Invalid record");
+			Item item;
+			if (kind == FILE)
+				item = new File(name, flags, creationTime, modificationTime, size);
+			else if (kind == ITEM)
+				item = new Item(name, (byte)(flags & Item.WRITABLE), creationTime, modificationTime);
+			else
+				item = new Directory(name, flags, creationTime, modificationTime, kind == CASE_INSENSITIVE_DIRECTORY);
+			item.move(dir);
+			dir.setModificationTime(time);
+			items.add(item);
+			return;
+		}
+		Item item = items.get(id);
+		Directory oldDir = item.getDirectory();
+		switch (operation) {
+		case MOVE:
+			Directory newDir = (Directory)items.get(record.getInt());
+			item.move(newDir);
+			newDir.setModificationTime(time);
+			if (oldDir != null)
+				oldDir.setModificationTime(time);
+			break;
+		case DETACH:
+			item.makeRoot();
+			if (oldDir != null)
+				oldDir.setModificationTime(time);
+			break;
+		case DELETE:
+			if (item instanceof Directory)
+				((Directory)item).deleteRecursively();
+			else
+				item.delete();
+			if (oldDir != null)
+				oldDir.setModificationTime(time);
+			break;
+		case RENAME:
+			item.changeName(NameCodec.decode(getName(record)));
+			item.setModificationTime(time);
+			if (oldDir != null)
+				oldDir.setModificationTime(time);
+			break;
+		case RESIZE:
+			int delta = record.getInt();
+			if (delta > 0)
+				((File)item).enlarge(delta);
+			else if (delta < 0)
+				((File)item).shorten(-delta);
+			item.setModificationTime(time);
+			break;
+		case WRITABLE:
+			item.setWritable(record.get() != 0);
+			break;
+		case CASE_INSENSITIVE_UNIQUE:
+			((Directory)item).setCaseInsensitiveUnique(record.get() != 0);
+			break;
+		default:
+			throw new IOException("Invalid record");
+		}
+	}
+
+	private static long[] getName(ByteBuffer record) {
+		long[] name = new long[record.getChar()];
+		for (int i = 0; i < name.length; i++)
+			name[i] = record.getLong();
+		return name;
+	}
+}
@@ -0,0 +1,114 @@
+package filesystem;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds, with buckets whose width grows with
+ * the latencies they hold, in the way of an HDR histogram.
+ *
+ * Latencies below 2^SUB_BITS nanoseconds have a bucket each. Every higher power
+ * of two is split into 2^SUB_BITS buckets of equal width, so every latency is
+ * registered with a relative error below 2^-SUB_BITS (about 3%). Latencies above
+ * 2^MAXIMUM_MAGNITUDE nanoseconds (about 18 minutes) are registered in the last bucket.
+ *
+ * All counters are LongAdders, so threads that record at the same time do not
+ * contend on the same memory. Reading the histogram while latencies are recorded
+ * gives counts that may be slightly out of step with each other.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class LatencyHistogram {
+
+	static final int SUB_BITS = 5;
+
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	static final int MAXIMUM_MAGNITUDE = 40;
+
+	static final int NB_BUCKETS = (MAXIMUM_MAGNITUDE - SUB_BITS + 2) << SUB_BITS;
+
+	private final LongAdder[] buckets = new LongAdder[NB_BUCKETS];
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder total = new LongAdder();
+
+	/**
+	 * Variable registering the highest latency recorded, only ever raised.
+	 */
+	private volatile long maximum = 0;
+
+	private static final AtomicLongFieldUpdater<LatencyHistogram> MAXIMUM =
+			AtomicLongFieldUpdater.newUpdater(LatencyHistogram.class, "maximum");
+
+	LatencyHistogram() {
+		for (int i = 0; i < NB_BUCKETS; i++)
+			buckets[i] = new LongAdder();
+	}
+
+	/**
+	 * Returns the index of the bucket of the given latency.
+	 */
+	static int getIndex(long nanos) {
+		if (nanos < SUB_COUNT)
+			return (int)Math.max(nanos, 0);
+		int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+		if (magnitude > MAXIMUM_MAGNITUDE)
+			return NB_BUCKETS - 1;
+		return ((magnitude - SUB_BITS + 1) << SUB_BITS) + (int)(nanos >>> (magnitude - SUB_BITS)) - SUB_COUNT;
+	}
+
+	/**
+	 * Returns the highest latency in the bucket with the given index.
+	 */
+	static long getHighestValue(int index) {
+		int block = index >>> SUB_BITS;
+		int sub = index & (SUB_COUNT - 1);
+		if (block == 0)
+			return sub;
+		return ((long)(SUB_COUNT + sub + 1) << (block - 1)) - 1;
+	}
+
+	void record(long nanos) {
+		buckets[getIndex(nanos)].increment();
+		count.increment();
+		total.add(nanos);
+		long maximum = this.maximum;
+		// the maximum is only written when it is raised, which is rare once it has settled
+		while (nanos > maximum && !MAXIMUM.compareAndSet(this, maximum, nanos))
+			maximum = this.maximum;
+	}
+
+	/**
+	 * Returns the counts of all buckets, in the order of their indexes.
+	 */
+	long[] getCounts() {
+		long[] counts = new long[NB_BUCKETS];
+		for (int i = 0; i < NB_BUCKETS; i++)
+			counts[i] = buckets[i].sum();
+		return counts;
+	}
+
+	long getCount() {
+		return count.sum();
+	}
+
+	long getTotal() {
+		return total.sum();
+	}
+
+	long getMaximum() {
+		return maximum;
+	}
+
+	void reset() {
+		for (LongAdder bucket : buckets)
+			bucket.reset();
+		count.reset();
+		total.reset();
+		maximum = 0;
+	}
+}
@@ -0,0 +1,276 @@
+package filesystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of snapshots that are loaded lazily.
+ *
+ * Opening a lazy snapshot only reads the root directory. The children of a directory
+ * are read from the snapshot the first time they are needed: when an item is looked up
+ * in the directory or its children are listed. The sizes, numbers of files and numbers
+ * of files per type of a directory are known without loading its children, so queries
+ * that are ruled out on these aggregates do not load anything.
+ *
+ * The children of a directory that has not changed since it was loaded can be unloaded
+ * again, see Directory.evict(). The snapshot keeps track of the loaded directories, and
+ * unloads the directories that have not been used recently when evict is called. Items
+ * that have been unloaded can no longer be changed, so the snapshot never unloads
+ * directories by itself: a handler can be notified when the heap is fuller than a given
+ * threshold after a garbage collection, and call evict once the application no longer
+ * uses the items below the directories that are not used recently.
+ *
+ * The snapshot file is mapped in memory and may not be changed while the tree is in use.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+public final class LazySnapshot implements Closeable {
+
+	/**
+	 * Variable registering the distance between the starts of the mapped windows of a snapshot.
+	 * Every window maps a bit more, so every record lies entirely within the window it starts in.
+	 */
+	private static final long STRIDE = 1L << 30;
+
+	private final Path path;
+
+	private final long size;
+
+	private final MappedByteBuffer[] windows;
+
+	private final Directory root;
+
+	/**
+	 * Variable referencing the regions of the directories that are loaded, in which the
+	 * clock hand looks for directories to unload. Guarded by this snapshot.
+	 */
+	private final ArrayList<SnapshotRegion> loaded = new ArrayList<SnapshotRegion>();
+
+	private int hand = 0;
+
+	/**
+	 * Variable referencing the listener for memory notifications, null if there is none.
+	 */
+	private NotificationListener listener = null;
+
+	/**
+	 * Variable referencing the memory pools whose threshold has been set by this snapshot,
+	 * with the threshold they had before.
+	 */
+	private final Map<MemoryPoolMXBean, Long> previousThresholds = new HashMap<MemoryPoolMXBean, Long>();
+
+	private LazySnapshot(Path path) throws IOException {
+		this.path = path;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			this.size = channel.size();
+			this.windows = new MappedByteBuffer[(int)(Math.max(size - 1, 0) / STRIDE) + 1];
+			for (int i = 0; i < windows.length; i++) {
+				long start = i * STRIDE;
+				windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+						Math.min(size - start, STRIDE + Snapshot.MAXIMUM_RECORD_SIZE));
+			}
+		}
+		Snapshot.readHeader(map(0), path);
+		this.root = Snapshot.readRoot(this);
+	}
+
+	/**
+	 * Opens the snapshot at the given path lazily.
+	 * @param 	path
+	 * 			the path of the snapshot
+	 * @return	Returns a new lazy snapshot, whose root directory has the same items below it,
+	 * 			with the same names, writability, types, sizes, creation and modification
+	 * 			times, as the directory the snapshot was written from.
+	 * @throws	IOException
+	 * 			Throws this exception when the snapshot can not be read, or when its header or
+	 * 			the record of its root directory are not valid.
+	 * @note	The other records are only checked when they are loaded. A record that is not
+	 * 			valid makes the loading directory throw an UncheckedIOException.
+	 */
+	public static LazySnapshot open(Path path) throws IOException {
+		return new LazySnapshot(path);
+	}
+
+	/**
+	 * Returns the root directory of this snapshot.
+	 */
+	@Basic
+	public Directory getRoot() {
+		return root;
+	}
+
+	/**
+	 * Returns the path of this snapshot.
+	 */
+	Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the size of this snapshot (in bytes).
+	 */
+	long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns a buffer positioned at the given position of this snapshot, from which
+	 * the whole record at that position can be read.
+	 * @throws	IOException
+	 * 			Throws this exception when the given position is not in this snapshot.
+	 */
+	ByteBuffer map(long position) throws IOException {
+		if (position < 0 || position >= size)
+			throw Snapshot.corrupt(path);
+		ByteBuffer window = windows[(int)(position / STRIDE)].duplicate();
+		window.position((int)(position % STRIDE));
+		return window;
+	}
+
+	/**
+	 * Registers the given region as loaded. Called by a directory once its children are loaded.
+	 */
+	synchronized void register(SnapshotRegion region) {
+		region.isReferenced = true;
+		loaded.add(region);
+	}
+
+	/**
+	 * Returns the number of directories of this snapshot whose children are loaded.
+	 * @note	Directories that have changed since they were loaded are counted as well,
+	 * 			until evict finds out they can not be unloaded.
+	 */
+	public synchronized int getNbLoaded() {
+		return loaded.size();
+	}
+
+	/**
+	 * Unloads the children of at most the given number of directories that have not
+	 * been used recently.
+	 * @param 	maxNbDirectories
+	 * 			the maximum number of directories to unload
+	 * @return	Returns the number of directories whose children have been unloaded.
+	 * @effect	The directories are chosen with the clock algorithm: a directory whose
+	 * 			children have been used since the last call is skipped once, the others
+	 * 			are unloaded in the order in which they have been loaded.
+	 * 			| for each chosen directory: directory.evict()
+	 * @note	Directories that have changed since they were loaded are no longer considered.
+	 */
+	public int evict(int maxNbDirectories) {
+		ArrayList<SnapshotRegion> candidates = new ArrayList<SnapshotRegion>();
+		synchronized (this) {
+			int nbVisits = 2 * loaded.size();
+			while (candidates.size() < maxNbDirectories && !loaded.isEmpty() && nbVisits-- > 0) {
+				if (hand >= loaded.size())
+					hand = 0;
+				SnapshotRegion region = loaded.get(hand);
+				if (region.isReferenced && region.dir.region == region) {
+					region.isReferenced = false;
+					hand++;
+				} else {
+					// the last region takes the place of the removed one
+					loaded.set(hand, loaded.get(loaded.size()-1));
+					loaded.remove(loaded.size()-1);
+					if (region.dir.region == region)
+						candidates.add(region);
+				}
+			}
+		}
+		// the directories are unloaded without the lock of this snapshot, since loading
+		// directories registers them while holding their locks
+		int nbEvicted = 0;
+		for (SnapshotRegion region : candidates) {
+			if (region.dir.evict())
+				nbEvicted++;
+		}
+		return nbEvicted;
+	}
+
+	/**
+	 * Notifies the given handler whenever the heap is fuller than the given fraction of its
+	 * maximum size after a garbage collection.
+	 * @param 	fraction
+	 * 			the fraction of the heap, 0 to stop notifying a handler
+	 * @param 	handler
+	 * 			the handler to notify, that may call evict
+	 * @post	When the threshold is exceeded, the given handler is run on the thread that
+	 * 			delivers the memory notifications. Nothing is unloaded unless it calls evict.
+	 * @throws	IllegalArgumentException
+	 * 			Throws this exception when the given fraction is not between 0 and 1, or when
+	 * 			the given handler is not effective while the given fraction is not 0.
+	 * 			| fraction < 0 || fraction > 1 || (fraction != 0 && handler == null)
+	 * @note	The threshold is set on the memory pools of the virtual machine, and applies to
+	 * 			everything that listens to them. The thresholds the pools had before are set
+	 * 			again when the handler is no longer notified.
+	 */
+	public synchronized void setMemoryThreshold(double fraction, final Runnable handler) throws IllegalArgumentException {
+		if (!(fraction >= 0 && fraction <= 1))
+			throw new IllegalArgumentException("The fraction must be between 0 and 1");
+		if (fraction != 0 && handler == null)
+			throw new IllegalArgumentException("The handler must be effective");
+		removeListener();
+		if (fraction == 0)
+			return;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			long max = pool.getUsage().getMax();
+			if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+				previousThresholds.put(pool, pool.getCollectionUsageThreshold());
+				pool.setCollectionUsageThreshold((long)(max * fraction));
+			}
+		}
+		listener = new NotificationListener() {
+			@Override
+			public void handleNotification(Notification notification, Object handback) {
+				if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType()))
+					handler.run();
+			}
+		};
+		((NotificationEmitter)ManagementFactory.getMemoryMXBean()).addNotificationListener(listener, null, null);
+	}
+
+	/**
+	 * Stops notifying the handler, and sets the thresholds of the memory pools back.
+	 */
+	private void removeListener() {
+		if (listener == null)
+			return;
+		try {
+			((NotificationEmitter)ManagementFactory.getMemoryMXBean()).removeNotificationListener(listener);
+		} catch (ListenerNotFoundException e) {
+			// the listener has been removed already
+		}
+		listener = null;
+		for (Map.Entry<MemoryPoolMXBean, Long> entry : previousThresholds.entrySet())
+			entry.getKey().setCollectionUsageThreshold(entry.getValue());
+		previousThresholds.clear();
+	}
+
+	/**
+	 * Stops notifying a handler on memory pressure.
+	 * @effect	| setMemoryThreshold(0, null)
+	 * @note	The tree stays usable, the mapped snapshot is released when it is no longer referenced.
+	 */
+	@Override
+	public synchronized void close() {
+		removeListener();
+	}
+}
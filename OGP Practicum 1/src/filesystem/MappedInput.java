@@ -0,0 +1,66 @@
+package filesystem;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A window on a file channel, mapped in memory, that moves forward through the channel.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class MappedInput {
+
+	/**
+	 * Variable registering the maximum size of the part of a channel mapped at once.
+	 */
+	private static final long WINDOW_SIZE = 1 << 30;
+
+	private final FileChannel channel;
+
+	private final long size;
+
+	/**
+	 * Variable registering the position in the channel of the start of the window.
+	 */
+	private long base = 0;
+
+	/**
+	 * Variable referencing the mapped window, positioned at the next byte to read.
+	 */
+	MappedByteBuffer buffer;
+
+	/**
+	 * Initialize a new input that maps the given channel from its start.
+	 */
+	MappedInput(FileChannel channel) throws IOException {
+		this.channel = channel;
+		this.size = channel.size();
+		this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_SIZE));
+	}
+
+	/**
+	 * Returns the number of bytes left in the channel.
+	 */
+	long remaining() {
+		return size - base - buffer.position();
+	}
+
+	/**
+	 * Makes sure the given number of bytes can be read from the buffer,
+	 * mapping the next window of the channel if needed.
+	 * @throws	IOException
+	 * 			Throws this exception when fewer bytes are left in the channel.
+	 */
+	void require(int nbBytes) throws IOException {
+		if (buffer.remaining() >= nbBytes)
+			return;
+		long position = base + buffer.position();
+		if (position + nbBytes > size)
+			throw new IOException("Unexpected end of file");
+		base = position;
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, WINDOW_SIZE));
+	}
+}
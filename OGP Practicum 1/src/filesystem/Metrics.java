@@ -0,0 +1,244 @@
+package filesystem;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of metrics that count the operations on items and register their latencies.
+ *
+ * The operations report to the recorder that is installed with setRecorder, if any.
+ * Without a recorder an operation only reads whether one is installed, and does not
+ * read the clock. Metrics are a recorder that keeps, for every operation, the number
+ * of times it ran and a histogram of its latencies, see LatencyHistogram.
+ *
+ * The latency of an operation includes the time it waits for locks, but not the time
+ * it waits for a journal to force its record to the disk.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+public final class Metrics implements OperationRecorder {
+
+	/**
+	 * An enumeration of the operations that are measured.
+	 */
+	public enum Operation {
+		/**
+		 * Adding an item to a directory, see Directory.addChild.
+		 */
+		ADD_CHILD,
+		/**
+		 * Removing an item from a directory, see Directory.removeChild.
+		 */
+		REMOVE_CHILD,
+		/**
+		 * Looking up an item in a directory, see Directory.getItem.
+		 */
+		GET_ITEM,
+		/**
+		 * Moving an item, see Item.move, including adding a new item to its directory.
+		 */
+		MOVE,
+		/**
+		 * Renaming an item, see Item.changeName.
+		 */
+		CHANGE_NAME
+	}
+
+	/**
+	 * Variable referencing the installed recorder, null if there is none.
+	 */
+	private static volatile OperationRecorder recorder = null;
+
+	/**
+	 * Variable registering the start time of an operation that is not measured.
+	 */
+	static final long NOT_MEASURED = Long.MIN_VALUE;
+
+	/**
+	 * Installs the given recorder.
+	 * @param 	recorder
+	 * 			the recorder to report the operations to, null to stop measuring them
+	 * @post	| new.getRecorder() == recorder
+	 * @note	Operations that are running while the recorder is changed may not be reported.
+	 */
+	public static void setRecorder(OperationRecorder recorder) {
+		Metrics.recorder = recorder;
+	}
+
+	/**
+	 * Returns the installed recorder, null if there is none.
+	 */
+	public static OperationRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Returns the start time of an operation, NOT_MEASURED if no recorder is installed.
+	 */
+	static long start() {
+		return recorder == null ? NOT_MEASURED : System.nanoTime();
+	}
+
+	/**
+	 * Reports the given operation, that started at the given time, to the installed recorder.
+	 */
+	static void stop(Operation operation, long start) {
+		if (start == NOT_MEASURED)
+			return;
+		OperationRecorder recorder = Metrics.recorder;
+		if (recorder != null)
+			recorder.record(operation, System.nanoTime() - start);
+	}
+
+	/**
+	 * Variable referencing the histogram of the latencies of every operation.
+	 */
+	private final EnumMap<Operation, LatencyHistogram> histograms =
+			new EnumMap<Operation, LatencyHistogram>(Operation.class);
+
+	/**
+	 * Initialize new metrics in which no operation has been recorded.
+	 */
+	public Metrics() {
+		for (Operation operation : Operation.values())
+			histograms.put(operation, new LatencyHistogram());
+	}
+
+	@Override
+	public void record(Operation operation, long nanos) {
+		histograms.get(operation).record(nanos);
+	}
+
+	/**
+	 * Returns the statistics of the given operation.
+	 * @return	Returns a snapshot of the number of times the given operation has been
+	 * 			recorded by these metrics and of its latencies.
+	 * @note	Operations that are recorded while the snapshot is taken may be counted
+	 * 			in some of the statistics and not in others.
+	 */
+	public Statistics getStatistics(Operation operation) {
+		LatencyHistogram histogram = histograms.get(operation);
+		return new Statistics(operation, histogram.getCount(), histogram.getTotal(),
+				histogram.getMaximum(), histogram.getCounts());
+	}
+
+	/**
+	 * Forgets all recorded operations.
+	 */
+	public void reset() {
+		for (LatencyHistogram histogram : histograms.values())
+			histogram.reset();
+	}
+
+	/**
+	 * Returns a report with a line of statistics for every operation.
+	 * @return	Returns a table with the number of times every operation has been
+	 * 			recorded, and its mean, median, 99th percentile and maximum latency
+	 * 			in microseconds.
+	 */
+	public String report() {
+		StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+				"%-12s %12s %10s %10s %10s %10s%n", "operation", "count", "mean", "p50", "p99", "max"));
+		for (Operation operation : Operation.values()) {
+			Statistics statistics = getStatistics(operation);
+			report.append(String.format(Locale.ROOT, "%-12s %12d %10.2f %10.2f %10.2f %10.2f%n",
+					operation.name().toLowerCase(Locale.ROOT), statistics.getCount(),
+					statistics.getMean() / 1e3, statistics.getPercentile(50) / 1e3,
+					statistics.getPercentile(99) / 1e3, statistics.getMaximum() / 1e3));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * A class of snapshots of the statistics of an operation. All latencies are in nanoseconds.
+	 */
+	public static final class Statistics {
+
+		private final Operation operation;
+
+		private final long count;
+
+		private final long total;
+
+		private final long maximum;
+
+		/**
+		 * Variable referencing the counts of the buckets of the latency histogram.
+		 */
+		private final long[] counts;
+
+		private Statistics(Operation operation, long count, long total, long maximum, long[] counts) {
+			this.operation = operation;
+			this.count = count;
+			this.total = total;
+			this.maximum = maximum;
+			this.counts = counts;
+		}
+
+		@Basic @Immutable
+		public Operation getOperation() {
+			return operation;
+		}
+
+		/**
+		 * Returns the number of times the operation has been recorded.
+		 */
+		@Basic @Immutable
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the sum of the latencies of the operation.
+		 */
+		@Basic @Immutable
+		public long getTotalTime() {
+			return total;
+		}
+
+		/**
+		 * Returns the highest latency of the operation, 0 if it has not been recorded.
+		 */
+		@Basic @Immutable
+		public long getMaximum() {
+			return maximum;
+		}
+
+		/**
+		 * Returns the mean latency of the operation, 0 if it has not been recorded.
+		 */
+		public double getMean() {
+			return count == 0 ? 0 : (double)total / count;
+		}
+
+		/**
+		 * Returns the latency below which the given percentage of the recorded latencies lie.
+		 * @param 	percentage
+		 * 			the percentage, between 0 and 100
+		 * @return	Returns the highest latency of the histogram bucket that holds the latency
+		 * 			at the given percentage, but never more than the maximum latency.
+		 * 			Returns 0 if the operation has not been recorded.
+		 * @throws	IllegalArgumentException
+		 * 			Throws this exception when the given percentage is not between 0 and 100.
+		 * 			| percentage < 0 || percentage > 100
+		 */
+		public long getPercentile(double percentage) throws IllegalArgumentException {
+			if (!(percentage >= 0 && percentage <= 100))
+				throw new IllegalArgumentException("The percentage must be between 0 and 100");
+			long nbCounted = 0;
+			for (long bucketCount : counts)
+				nbCounted += bucketCount;
+			long rank = Math.max(1, (long)Math.ceil(percentage / 100 * nbCounted));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank)
+					return Math.min(LatencyHistogram.getHighestValue(i), maximum);
+			}
+			return 0;
+		}
+	}
+}
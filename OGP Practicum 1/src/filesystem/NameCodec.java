@@ -0,0 +1,198 @@
+package filesystem;
+
+import java.util.Arrays;
+
+/**
+ * A class of static helpers to store names of items compactly.
+ *
+ * Names only consist of ASCII letters, digits, dots, hyphens and underscores.
+ * An encoded name packs eight characters in every long, the first character
+ * in the highest byte, and pads the last long with zero bytes. Since no valid
+ * character is zero, comparing the longs as unsigned numbers orders names
+ * exactly like comparing them character by character, eight characters at a time.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class NameCodec {
+
+	private NameCodec() {
+	}
+
+	/**
+	 * Variable registering for every ASCII character whether it may occur in a name.
+	 */
+	private static final boolean[] VALID_CHARS = new boolean[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++)
+			VALID_CHARS[c] = true;
+		for (char c = 'A'; c <= 'Z'; c++)
+			VALID_CHARS[c] = true;
+		for (char c = '0'; c <= '9'; c++)
+			VALID_CHARS[c] = true;
+		VALID_CHARS['_'] = true;
+		VALID_CHARS['.'] = true;
+		VALID_CHARS['-'] = true;
+	}
+
+	/**
+	 * Checks whether the given string is effective, not empty and only consists
+	 * of letters, digits, dots, hyphens and underscores.
+	 */
+	static boolean isValid(String name) {
+		if (name == null || name.isEmpty())
+			return false;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c >= 128 || !VALID_CHARS[c])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether the given words are the encoded form of a valid name.
+	 */
+	static boolean isValid(long[] words) {
+		if (words.length == 0 || words[words.length-1] == 0)
+			return false;
+		for (int i = 0; i < length(words); i++) {
+			char c = charAt(words, i);
+			if (c >= 128 || !VALID_CHARS[c])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the encoded form of the given valid name.
+	 */
+	static long[] encode(String name) {
+		long[] words = new long[(name.length() + 7) >>> 3];
+		for (int i = 0; i < name.length(); i++)
+			words[i >>> 3] |= (long)name.charAt(i) << shift(i);
+		return words;
+	}
+
+	/**
+	 * Returns the name with the given encoded form.
+	 */
+	static String decode(long[] words) {
+		char[] chars = new char[length(words)];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = charAt(words, i);
+		return new String(chars);
+	}
+
+	/**
+	 * Returns the number of characters in the given encoded name.
+	 */
+	static int length(long[] words) {
+		if (words.length == 0)
+			return 0;
+		return (words.length << 3) - (Long.numberOfTrailingZeros(words[words.length-1]) >>> 3);
+	}
+
+	/**
+	 * Returns the character at the given index in the given encoded name.
+	 */
+	static char charAt(long[] words, int index) {
+		return (char)((words[index >>> 3] >>> shift(index)) & 0xff);
+	}
+
+	private static int shift(int index) {
+		return 56 - ((index & 7) << 3);
+	}
+
+	/**
+	 * Compares two encoded names, eight characters at a time.
+	 * @return	Returns 1, 0 or -1 when the first name is ranked higher than,
+	 * 			equal to or lower than the second name.
+	 */
+	static int compare(long[] words1, long[] words2) {
+		int common = Math.min(words1.length, words2.length);
+		for (int i = 0; i < common; i++) {
+			if (words1[i] != words2[i])
+				return Long.compareUnsigned(words1[i], words2[i]) > 0 ? 1 : -1;
+		}
+		return Integer.compare(words1.length, words2.length);
+	}
+
+	/**
+	 * Compares an encoded name with the given name, character by character.
+	 * @return	Returns 1, 0 or -1 when the encoded name is ranked higher than,
+	 * 			equal to or lower than the given name.
+	 */
+	static int compare(long[] words, String name) {
+		int length = length(words);
+		int common = Math.min(length, name.length());
+		for (int i = 0; i < common; i++) {
+			char c1 = charAt(words, i);
+			char c2 = name.charAt(i);
+			if (c1 != c2)
+				return c1 > c2 ? 1 : -1;
+		}
+		return Integer.compare(length, name.length());
+	}
+
+	/**
+	 * Checks whether the encoded name equals the given name, possibly ignoring cases.
+	 */
+	static boolean equals(long[] words, String name, boolean ignoreCase) {
+		if (length(words) != name.length())
+			return false;
+		for (int i = 0; i < name.length(); i++) {
+			char c1 = charAt(words, i);
+			char c2 = name.charAt(i);
+			if (c1 != c2 && (!ignoreCase || fold(c1) != fold(c2)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether the two encoded names are equal, possibly ignoring cases.
+	 */
+	static boolean equals(long[] words1, long[] words2, boolean ignoreCase) {
+		if (!ignoreCase)
+			return Arrays.equals(words1, words2);
+		int length = length(words1);
+		if (length != length(words2))
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (fold(charAt(words1, i)) != fold(charAt(words2, i)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a hash of the encoded name, equal to the hash of the same name as a string.
+	 */
+	static int hash(long[] words, boolean ignoreCase) {
+		int h = 0;
+		int length = length(words);
+		for (int i = 0; i < length; i++)
+			h = 31 * h + (ignoreCase ? fold(charAt(words, i)) : charAt(words, i));
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns a hash of the given name, possibly ignoring cases.
+	 */
+	static int hash(String name, boolean ignoreCase) {
+		int h = 0;
+		for (int i = 0; i < name.length(); i++)
+			h = 31 * h + (ignoreCase ? fold(name.charAt(i)) : name.charAt(i));
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the lower case of the given ASCII letter, the given character otherwise.
+	 */
+	private static char fold(char c) {
+		return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+	}
+}
@@ -0,0 +1,213 @@
+package filesystem;
+
+/**
+ * A hash index of items on their name, possibly ignoring cases.
+ *
+ * The index hashes and compares the encoded names of the items directly
+ * (see NameCodec), so it holds no strings of its own and looking up a name
+ * does not allocate any objects. When cases are ignored, the index folds
+ * cases itself while hashing and probing.
+ *
+ * The index uses open addressing with linear probing. More than one item
+ * can be registered under the same name.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 2.0
+ *
+ */
+final class NameIndex {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Variable registering whether this index ignores cases.
+	 */
+	private final boolean ignoreCase;
+
+	/**
+	 * Variable referencing the slots of this index, null for an empty slot.
+	 * The length of this array is always a power of two.
+	 */
+	private Item[] slots = new Item[INITIAL_CAPACITY];
+
+	/**
+	 * Variable registering the number of items in this index.
+	 */
+	private int size = 0;
+
+	/**
+	 * Initialize a new empty index.
+	 * @param 	ignoreCase
+	 * 			Whether the new index ignores cases.
+	 */
+	NameIndex(boolean ignoreCase) {
+		this.ignoreCase = ignoreCase;
+	}
+
+	/**
+	 * Returns the number of items in this index.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns an item registered in this index with the given name, null if there is none.
+	 * @param 	name
+	 * 			The name to look for.
+	 */
+	Item get(String name) {
+		int mask = slots.length - 1;
+		for (int i = NameCodec.hash(name, ignoreCase) & mask; slots[i] != null; i = (i + 1) & mask) {
+			if (NameCodec.equals(slots[i].getEncodedName(), name, ignoreCase))
+				return slots[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Returns an item registered in this index with the given encoded name, null if there is none.
+	 * @param 	name
+	 * 			The encoded name to look for.
+	 */
+	Item get(long[] name) {
+		int mask = slots.length - 1;
+		for (int i = NameCodec.hash(name, ignoreCase) & mask; slots[i] != null; i = (i + 1) & mask) {
+			if (NameCodec.equals(slots[i].getEncodedName(), name, ignoreCase))
+				return slots[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether an item with the given name is registered in this index.
+	 * @param 	name
+	 * 			The name to look for.
+	 */
+	boolean contains(String name) {
+		return get(name) != null;
+	}
+
+	/**
+	 * Checks whether an item with the given encoded name is registered in this index.
+	 * @param 	name
+	 * 			The encoded name to look for.
+	 */
+	boolean contains(long[] name) {
+		return get(name) != null;
+	}
+
+	/**
+	 * Returns the number of items other than the given item that are registered
+	 * in this index with the given name.
+	 * @param 	name
+	 * 			The name to look for.
+	 * @param 	except
+	 * 			The item that must not be counted, possibly null.
+	 */
+	int count(String name, Item except) {
+		int mask = slots.length - 1;
+		int count = 0;
+		for (int i = NameCodec.hash(name, ignoreCase) & mask; slots[i] != null; i = (i + 1) & mask) {
+			if (slots[i] != except && NameCodec.equals(slots[i].getEncodedName(), name, ignoreCase))
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of items other than the given item that are registered
+	 * in this index with the given encoded name.
+	 * @param 	name
+	 * 			The encoded name to look for.
+	 * @param 	except
+	 * 			The item that must not be counted, possibly null.
+	 */
+	int count(long[] name, Item except) {
+		int mask = slots.length - 1;
+		int count = 0;
+		for (int i = NameCodec.hash(name, ignoreCase) & mask; slots[i] != null; i = (i + 1) & mask) {
+			if (slots[i] != except && NameCodec.equals(slots[i].getEncodedName(), name, ignoreCase))
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Registers the given item in this index.
+	 * @param 	item
+	 * 			The item to register.
+	 */
+	void add(Item item) {
+		if ((size + 1) * 2 > slots.length)
+			resize(slots.length * 2);
+		insert(slots, item);
+		size++;
+	}
+
+	/**
+	 * Removes all items from this index and shrinks it to its initial capacity.
+	 */
+	void clear() {
+		slots = new Item[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	/**
+	 * Removes the given item from this index, if it is registered under its current name.
+	 * @param 	item
+	 * 			The item to remove.
+	 */
+	void remove(Item item) {
+		remove(item, item.getEncodedName());
+	}
+
+	/**
+	 * Removes the given item from this index, if it is registered under the given encoded name.
+	 * @param 	item
+	 * 			The item to remove.
+	 * @param 	name
+	 * 			The encoded name under which the item was registered.
+	 */
+	void remove(Item item, long[] name) {
+		int mask = slots.length - 1;
+		int i = NameCodec.hash(name, ignoreCase) & mask;
+		while (slots[i] != item) {
+			if (slots[i] == null)
+				return;
+			i = (i + 1) & mask;
+		}
+		// shift the following items of the cluster back so no probe sequence is broken
+		int gap = i;
+		for (i = (i + 1) & mask; slots[i] != null; i = (i + 1) & mask) {
+			int home = hash(slots[i]) & mask;
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				slots[gap] = slots[i];
+				gap = i;
+			}
+		}
+		slots[gap] = null;
+		size--;
+	}
+
+	private void resize(int capacity) {
+		Item[] newSlots = new Item[capacity];
+		for (Item item : slots) {
+			if (item != null)
+				insert(newSlots, item);
+		}
+		slots = newSlots;
+	}
+
+	private void insert(Item[] table, Item item) {
+		int mask = table.length - 1;
+		int i = hash(item) & mask;
+		while (table[i] != null)
+			i = (i + 1) & mask;
+		table[i] = item;
+	}
+
+	private int hash(Item item) {
+		return NameCodec.hash(item.getEncodedName(), ignoreCase);
+	}
+}
@@ -0,0 +1,19 @@
+package filesystem;
+
+/**
+ * An interface of recorders of the latencies of operations on items, that can be
+ * installed with Metrics.setRecorder.
+ *
+ * Recorders are called by the threads that run the operations, possibly at the same time.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+public interface OperationRecorder {
+
+	/**
+	 * Registers that the given operation ran for the given number of nanoseconds.
+	 */
+	void record(Metrics.Operation operation, long nanos);
+}
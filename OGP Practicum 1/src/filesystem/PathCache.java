@@ -0,0 +1,96 @@
+package filesystem;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+
+/**
+ * A bounded cache of resolved paths relative to a directory.
+ *
+ * The cache only holds paths that resolved to an item. The least recently
+ * used path is evicted when the cache is full. Paths are kept sorted as well,
+ * so all the paths through a given item can be invalidated at once.
+ *
+ * All methods are synchronized, a path cache can be used by several threads.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class PathCache {
+
+	/**
+	 * Variable registering the maximum number of paths in a path cache.
+	 */
+	static final int MAXIMUM_SIZE = 1024;
+
+	/**
+	 * Variable referencing the cached paths, in order of last access.
+	 */
+	private final LinkedHashMap<String, Item> byAccess = new LinkedHashMap<String, Item>(16, 0.75f, true);
+
+	/**
+	 * Variable referencing the cached paths, in lexicographic order.
+	 */
+	private final TreeMap<String, Item> byPath = new TreeMap<String, Item>();
+
+	/**
+	 * Variable registering the number of invalidations of this cache.
+	 */
+	private long version = 0;
+
+	/**
+	 * Returns the item cached for the given path, null if the path is not cached.
+	 */
+	synchronized Item get(String path) {
+		return byAccess.get(path);
+	}
+
+	/**
+	 * Returns the number of invalidations of this cache.
+	 */
+	synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Registers the given item as the resolution of the given path, if this cache
+	 * has not been invalidated since the given version.
+	 */
+	synchronized void put(String path, Item item, long version) {
+		if (this.version != version)
+			return;
+		if (byAccess.size() >= MAXIMUM_SIZE && !byAccess.containsKey(path)) {
+			Iterator<String> eldest = byAccess.keySet().iterator();
+			byPath.remove(eldest.next());
+			eldest.remove();
+		}
+		byAccess.put(path, item);
+		byPath.put(path, item);
+	}
+
+	/**
+	 * Removes the given path and all the paths below it from this cache.
+	 * @param 	path
+	 * 			The path of the item that has been renamed, moved or deleted.
+	 */
+	synchronized void invalidate(String path) {
+		version++;
+		if (byPath.remove(path) != null)
+			byAccess.remove(path);
+		// every path below the given path starts with the path followed by a slash,
+		// '0' is the character that follows the slash
+		Iterator<String> below = byPath.subMap(path + '/', path + '0').keySet().iterator();
+		while (below.hasNext()) {
+			byAccess.remove(below.next());
+			below.remove();
+		}
+	}
+
+	/**
+	 * Returns the number of paths in this cache.
+	 */
+	synchronized int size() {
+		return byAccess.size();
+	}
+}
@@ -0,0 +1,139 @@
+package filesystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A fork/join task that collects the items satisfying a predicate from a range of
+ * children of a directory, and from the subdirectories of those children.
+ *
+ * A task splits its range in halves as long as it holds more than SPLIT_THRESHOLD
+ * children. Subdirectories with at least SEQUENTIAL_THRESHOLD files below them
+ * are handled by forked tasks, smaller ones are walked by the task itself.
+ * Subdirectories the predicate rules out on their aggregates are skipped.
+ *
+ * The items are collected in the order of a depth first walk over the children,
+ * whatever the way the work is divided.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class QueryTask extends RecursiveTask<List<Item>> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Variable registering the maximum number of children one task handles without splitting.
+	 */
+	static final int SPLIT_THRESHOLD = 1024;
+
+	/**
+	 * Variable registering the number of files below a subdirectory from which it gets its own task.
+	 */
+	static final long SEQUENTIAL_THRESHOLD = 4096;
+
+	private final ItemPredicate predicate;
+
+	/**
+	 * Variable referencing the snapshot of children this task works on.
+	 */
+	private final List<Item> children;
+
+	private final int from;
+
+	private final int to;
+
+	/**
+	 * Initialize a new task for the children in the given snapshot from the given
+	 * index (inclusive) to the given index (exclusive).
+	 */
+	QueryTask(ItemPredicate predicate, List<Item> children, int from, int to) {
+		this.predicate = predicate;
+		this.children = children;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected List<Item> compute() {
+		if (to - from > SPLIT_THRESHOLD) {
+			int middle = (from + to) >>> 1;
+			QueryTask left = new QueryTask(predicate, children, from, middle);
+			QueryTask right = new QueryTask(predicate, children, middle, to);
+			right.fork();
+			List<Item> result = left.compute();
+			result.addAll(right.join());
+			return result;
+		}
+
+		// the parts of the result in order: lists of items and forked tasks
+		ArrayList<Object> parts = new ArrayList<Object>();
+		ArrayList<Item> current = new ArrayList<Item>();
+		for (int i = from; i < to; i++) {
+			Item item = children.get(i);
+			if (predicate.test(item))
+				current.add(item);
+			if (item instanceof Directory && predicate.mayMatchBelow((Directory)item)) {
+				Directory dir = (Directory)item;
+				List<Item> dirChildren = dir.getChildren();
+				if (dir.getTotalNbFiles() >= SEQUENTIAL_THRESHOLD || dirChildren.size() > SPLIT_THRESHOLD) {
+					parts.add(current);
+					parts.add(new QueryTask(predicate, dirChildren, 0, dirChildren.size()).fork());
+					current = new ArrayList<Item>();
+				} else {
+					walk(dirChildren, current);
+				}
+			}
+		}
+		if (parts.isEmpty())
+			return current;
+		parts.add(current);
+
+		ArrayList<Item> result = new ArrayList<Item>();
+		for (Object part : parts) {
+			if (part instanceof QueryTask)
+				result.addAll(((QueryTask)part).join());
+			else
+				result.addAll(cast(part));
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Item> cast(Object part) {
+		return (List<Item>)part;
+	}
+
+	/**
+	 * Adds the items satisfying the predicate in the given children and below them
+	 * to the given list, without forking.
+	 */
+	private void walk(List<Item> children, List<Item> result) {
+		// an explicit stack of the children lists being walked and the position in each,
+		// so deep chains of directories do not overflow the call stack
+		ArrayList<List<Item>> lists = new ArrayList<List<Item>>();
+		int[] positions = new int[8];
+		lists.add(children);
+		walking: while (!lists.isEmpty()) {
+			int top = lists.size() - 1;
+			List<Item> list = lists.get(top);
+			for (int i = positions[top]; i < list.size(); i++) {
+				Item item = list.get(i);
+				if (predicate.test(item))
+					result.add(item);
+				if (item instanceof Directory && predicate.mayMatchBelow((Directory)item)) {
+					positions[top] = i + 1;
+					if (lists.size() == positions.length)
+						positions = Arrays.copyOf(positions, positions.length * 2);
+					positions[lists.size()] = 0;
+					lists.add(((Directory)item).getChildren());
+					continue walking;
+				}
+			}
+			lists.remove(top);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package filesystem;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fork/join action that releases a range of the items of a subtree that is deleted
+ * by Directory.deleteRecursively: every item is detached from its directory and
+ * becomes a root item, every directory is emptied.
+ *
+ * An action splits its range in halves as long as it holds more than SPLIT_THRESHOLD
+ * items. The items are independent of each other, so the order does not matter.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class ReleaseTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Variable registering the maximum number of items one action releases without splitting.
+	 */
+	static final int SPLIT_THRESHOLD = 4096;
+
+	private final List<Item> items;
+
+	private final int from;
+
+	private final int to;
+
+	/**
+	 * Initialize a new action for the given items from the given index (inclusive)
+	 * to the given index (exclusive).
+	 */
+	ReleaseTask(List<Item> items, int from, int to) {
+		this.items = items;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from > SPLIT_THRESHOLD) {
+			int middle = (from + to) >>> 1;
+			invokeAll(new ReleaseTask(items, from, middle), new ReleaseTask(items, middle, to));
+			return;
+		}
+		for (int i = from; i < to; i++)
+			items.get(i).release();
+	}
+}
@@ -0,0 +1,491 @@
+package filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A class of static methods to write a tree of items to a binary snapshot
+ * and to load it back.
+ *
+ * A snapshot starts with a header of 28 bytes: the magic number, the version of the
+ * format, the number of items, the number of allowed types and a random stamp that
+ * identifies the snapshot. The items follow in the order of a depth first walk, every
+ * directory followed by the items below it. Every item is one record:
+ *  - the kind of the item (1 byte): a file, a directory, a case insensitive unique directory
+ *    or an item that is neither a file nor a directory,
+ *  - the flags of the item (1 byte), holding its writability and the type of a file,
+ *  - the number of words in the encoded name (2 bytes) and the words (8 bytes each),
+ *  - the creation time and modification time (8 bytes each),
+ *  - the size of a file or the number of children of a directory, 0 for other items (4 bytes),
+ *  - for a directory only: the number of bytes of the records below it, its total size,
+ *    its total number of files and its number of files of every type (8 bytes each).
+ * All numbers are big endian, the byte order in which names are encoded.
+ *
+ * The loader maps the snapshot in memory and creates the items directly from their
+ * records: the children are already sorted, so every directory gets its children,
+ * name indexes, aggregates and type index in one step instead of one item at a time.
+ *
+ * Thanks to the aggregates and the number of bytes below every directory, a snapshot
+ * can also be opened lazily (see LazySnapshot): the children of a directory are then
+ * read from its records when they are first needed, skipping the records further below.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+public final class Snapshot {
+
+	private Snapshot() {
+	}
+
+	/**
+	 * Variable registering the magic number at the start of every snapshot ("OGPS").
+	 */
+	static final int MAGIC = 0x4F475053;
+
+	/**
+	 * Variable registering the version of the format of snapshots.
+	 */
+	static final int VERSION = 4;
+
+	static final int HEADER_SIZE = 28;
+
+	private static final byte FILE = 0;
+	private static final byte DIRECTORY = 1;
+	private static final byte CASE_INSENSITIVE_DIRECTORY = 2;
+	private static final byte ITEM = 3;
+
+	/**
+	 * Variable registering the size of a record without the words of the name
+	 * and without the extension of a directory.
+	 */
+	private static final int RECORD_SIZE = 1 + 1 + 2 + 8 + 8 + 4;
+
+	private static final int MAXIMUM_NB_WORDS = 0xffff;
+
+	/**
+	 * Variable registering an upper bound on the size of a record.
+	 */
+	static final int MAXIMUM_RECORD_SIZE = RECORD_SIZE + 8 * MAXIMUM_NB_WORDS + 8 * (3 + 128);
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Returns the size of the extension of a directory record.
+	 */
+	private static int getExtensionSize() {
+		return 8 * (3 + TypeRegistry.getNbTypes());
+	}
+
+	/**
+	 * A directory whose records are being written, with the aggregates of the records
+	 * written below it so far.
+	 */
+	private static final class Frame {
+
+		/**
+		 * Variable registering the position of the extension of the record of the directory.
+		 */
+		private final long extension;
+
+		/**
+		 * Variable registering the position of the first record below the directory.
+		 */
+		private final long start;
+
+		private int nbRemaining;
+
+		private long totalSize = 0;
+
+		private long totalNbFiles = 0;
+
+		private final long[] counts = new long[TypeRegistry.getNbTypes()];
+
+		private Frame(long extension, long start, int nbRemaining) {
+			this.extension = extension;
+			this.start = start;
+			this.nbRemaining = nbRemaining;
+		}
+
+		private void add(File file) {
+			totalSize += file.getSize();
+			totalNbFiles++;
+			if (file.getTypeId() != -1)
+				counts[file.getTypeId()]++;
+		}
+
+		private void add(Frame below) {
+			totalSize += below.totalSize;
+			totalNbFiles += below.totalNbFiles;
+			for (int id = 0; id < counts.length; id++)
+				counts[id] += below.counts[id];
+		}
+	}
+
+	/**
+	 * Writes the given directory and all items below it to a snapshot at the given path.
+	 * @param 	root
+	 * 			the directory to write, it is loaded back as a root directory
+	 * @param 	path
+	 * 			the path of the snapshot
+	 * @return	Returns the stamp of the new snapshot.
+	 * @post	The snapshot is written to a temporary file next to the given path, forced
+	 * 			to the disk and then moved to the given path, replacing any earlier snapshot.
+	 * @throws	IOException
+	 * 			Throws this exception when the snapshot can not be written, or when an item
+	 * 			has a name of more than 524280 characters.
+	 * @note	Every directory is written from a snapshot of its children, the snapshot
+	 * 			is only consistent if the tree is not changed while it is written.
+	 * 			The aggregates of the directories are computed from the records that are
+	 * 			written, and filled in once all records below a directory are written.
+	 */
+	public static long write(Directory root, Path path) throws IOException {
+		long stamp = new SecureRandom().nextLong();
+		int extensionSize = getExtensionSize();
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			ByteBuffer extension = ByteBuffer.allocate(extensionSize);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(0).putInt(TypeRegistry.getNbTypes()).putLong(stamp);
+			long flushed = 0;
+			long nbItems = 0;
+			ArrayList<Frame> open = new ArrayList<Frame>();
+			ArrayDeque<Item> stack = new ArrayDeque<Item>();
+			stack.push(root);
+			while (!stack.isEmpty()) {
+				Item item = stack.pop();
+				long[] name = item.getEncodedName();
+				if (name.length > MAXIMUM_NB_WORDS)
+					throw new IOException("The name of " + item.getName() + " is too long for a snapshot");
+				if (buffer.remaining() < RECORD_SIZE + 8 * name.length + extensionSize) {
+					flushed += buffer.position();
+					flush(channel, buffer);
+				}
+				if (item instanceof Directory) {
+					Directory dir = (Directory)item;
+					buffer.put(dir.isCaseInsensitiveUnique() ? CASE_INSENSITIVE_DIRECTORY : DIRECTORY);
+				} else {
+					buffer.put(item instanceof File ? FILE : ITEM);
+				}
+				buffer.put(item.flags);
+				buffer.putChar((char)name.length);
+				for (long word : name)
+					buffer.putLong(word);
+				buffer.putLong(item.getCreationMillis());
+				buffer.putLong(item.getModificationMillis());
+				List<Item> children = null;
+				long extensionPosition = 0;
+				if (item instanceof Directory) {
+					children = ((Directory)item).getChildren();
+					buffer.putInt(children.size());
+					// the extension is filled in once the records below the directory are written
+					extensionPosition = flushed + buffer.position();
+					buffer.position(buffer.position() + extensionSize);
+				} else {
+					buffer.putInt(item instanceof File ? ((File)item).getSize() : 0);
+				}
+				nbItems++;
+
+				if (!open.isEmpty()) {
+					Frame top = open.get(open.size()-1);
+					top.nbRemaining--;
+					if (item instanceof File)
+						top.add((File)item);
+				}
+				if (children != null) {
+					open.add(new Frame(extensionPosition, flushed + buffer.position(), children.size()));
+					for (int i = children.size() - 1; i >= 0; i--)
+						stack.push(children.get(i));
+				}
+				while (!open.isEmpty() && open.get(open.size()-1).nbRemaining == 0) {
+					Frame done = open.remove(open.size()-1);
+					extension.clear();
+					extension.putLong(flushed + buffer.position() - done.start);
+					extension.putLong(done.totalSize).putLong(done.totalNbFiles);
+					for (long count : done.counts)
+						extension.putLong(count);
+					extension.flip();
+					if (done.extension >= flushed) {
+						// the record of the directory is still in the buffer
+						ByteBuffer target = buffer.duplicate();
+						target.position((int)(done.extension - flushed));
+						target.put(extension);
+					} else {
+						long position = done.extension;
+						while (extension.hasRemaining())
+							position += channel.write(extension, position);
+					}
+					if (!open.isEmpty())
+						open.get(open.size()-1).add(done);
+				}
+			}
+			flushed += buffer.position();
+			flush(channel, buffer);
+			buffer.putLong(nbItems).flip();
+			channel.write(buffer, 8);
+			channel.force(true);
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return stamp;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Loads the tree of items in the snapshot at the given path.
+	 * @param 	path
+	 * 			the path of the snapshot
+	 * @return	Returns a new root directory with the same items below it, with the same
+	 * 			names, writability, types, sizes, creation and modification times, as
+	 * 			the directory the snapshot was written from.
+	 * @throws	IOException
+	 * 			Throws this exception when the snapshot can not be read, or when it is not
+	 * 			a valid snapshot: names must be valid and sorted within every directory.
+	 */
+	public static Directory read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedInput input = new MappedInput(channel);
+			input.require(HEADER_SIZE);
+			long nbItems = readHeader(input.buffer, path);
+			input.buffer.getLong(); // the stamp
+			int extensionSize = getExtensionSize();
+
+			Directory root = null;
+			long nbRead = 0;
+			// the directories being loaded, their children so far and the number of children left
+			ArrayList<Directory> dirs = new ArrayList<Directory>();
+			ArrayList<ArrayList<Item>> lists = new ArrayList<ArrayList<Item>>();
+			int[] nbRemaining = new int[16];
+			do {
+				input.require(4);
+				byte kind = input.buffer.get();
+				byte flags = input.buffer.get();
+				int nbWords = input.buffer.getChar();
+				input.require(RECORD_SIZE - 4 + 8 * nbWords + (isDirectory(kind) ? extensionSize : 0));
+				long[] name = new long[nbWords];
+				for (int i = 0; i < nbWords; i++)
+					name[i] = input.buffer.getLong();
+				long creationTime = input.buffer.getLong();
+				long modificationTime = input.buffer.getLong();
+				int last = input.buffer.getInt();
+				nbRead++;
+				if (!NameCodec.isValid(name) || nbRead > nbItems)
+					throw corrupt(path);
+
+				Item item;
+				if (kind == FILE) {
+					if (root == null || !isValidFile(flags, last))
+						throw corrupt(path);
+					item = new File(name, flags, creationTime, modificationTime, last);
+				} else if (kind == ITEM) {
+					if (root == null || !isValidItem(flags, last))
+						throw corrupt(path);
+					item = new Item(name, flags, creationTime, modificationTime);
+				} else if (kind == DIRECTORY || kind == CASE_INSENSITIVE_DIRECTORY) {
+					if (last < 0 || last > nbItems - nbRead)
+						throw corrupt(path);
+					// the aggregates are computed again while the children are loaded
+					input.buffer.position(input.buffer.position() + extensionSize);
+					item = new Directory(name, (byte)(flags & Item.WRITABLE), creationTime, modificationTime,
+							kind == CASE_INSENSITIVE_DIRECTORY);
+				} else {
+					throw corrupt(path);
+				}
+
+				if (root == null) {
+					root = (Directory)item;
+				} else {
+					int top = dirs.size() - 1;
+					ArrayList<Item> children = lists.get(top);
+					if (!children.isEmpty() && NameCodec.compare(children.get(children.size()-1).getEncodedName(), name) >= 0)
+						throw corrupt(path);
+					item.attachLoaded(dirs.get(top));
+					children.add(item);
+					nbRemaining[top]--;
+				}
+				if (item instanceof Directory && last > 0) {
+					if (dirs.size() == nbRemaining.length)
+						nbRemaining = Arrays.copyOf(nbRemaining, nbRemaining.length * 2);
+					nbRemaining[dirs.size()] = last;
+					dirs.add((Directory)item);
+					lists.add(new ArrayList<Item>(last));
+				}
+				// every directory gets its children as soon as the last one is loaded
+				while (!dirs.isEmpty() && nbRemaining[dirs.size()-1] == 0) {
+					int top = dirs.size() - 1;
+					dirs.remove(top).setLoadedChildren(lists.remove(top));
+				}
+			} while (!dirs.isEmpty());
+			if (nbRead != nbItems)
+				throw corrupt(path);
+			return root;
+		}
+	}
+
+	/**
+	 * Checks whether the given kind is the kind of a directory.
+	 */
+	private static boolean isDirectory(byte kind) {
+		return kind == DIRECTORY || kind == CASE_INSENSITIVE_DIRECTORY;
+	}
+
+	/**
+	 * Checks whether the given flags and size are valid for the record of an item
+	 * that is neither a file nor a directory.
+	 */
+	private static boolean isValidItem(byte flags, int size) {
+		return size == 0 && (flags & ~Item.WRITABLE) == 0;
+	}
+
+	/**
+	 * Checks whether the given flags and size are valid for the record of a file.
+	 */
+	private static boolean isValidFile(byte flags, int size) {
+		int typeId = (flags >>> 1 & 0x7f) - 1;
+		return size >= 0 && typeId >= -1 && typeId < TypeRegistry.getNbTypes();
+	}
+
+	/**
+	 * Returns the stamp of the snapshot at the given path.
+	 * @throws	IOException
+	 * 			Throws this exception when the header can not be read or is not valid.
+	 */
+	static long readStamp(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedInput input = new MappedInput(channel);
+			input.require(HEADER_SIZE);
+			readHeader(input.buffer, path);
+			return input.buffer.getLong();
+		}
+	}
+
+	/**
+	 * Reads the header of a snapshot from the given buffer up to the stamp,
+	 * and returns the number of items.
+	 */
+	static long readHeader(ByteBuffer buffer, Path path) throws IOException {
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+			throw new IOException(path + " is not a snapshot");
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported snapshot version " + version);
+		long nbItems = buffer.getLong();
+		if (buffer.getInt() != TypeRegistry.getNbTypes())
+			throw new IOException(path + " was written with other types");
+		return nbItems;
+	}
+
+	/**
+	 * Reads the root directory of the given lazy snapshot, without its children.
+	 * @throws	IOException
+	 * 			Throws this exception when the record of the root is not valid.
+	 */
+	static Directory readRoot(LazySnapshot snapshot) throws IOException {
+		Item root = readUnloaded(snapshot, HEADER_SIZE);
+		if (!(root instanceof Directory))
+			throw corrupt(snapshot.getPath());
+		return (Directory)root;
+	}
+
+	/**
+	 * Reads the children of the directory of the given region from its lazy snapshot.
+	 * @return	Returns the children, sorted on their names and attached to the directory
+	 * 			of the region with attachLoaded. The children of directories are not loaded.
+	 * @throws	IOException
+	 * 			Throws this exception when the records of the children are not valid.
+	 */
+	static ArrayList<Item> readChildren(SnapshotRegion region) throws IOException {
+		ArrayList<Item> children = new ArrayList<Item>(region.nbChildren);
+		long position = region.position;
+		long end = region.position + region.length;
+		for (int i = 0; i < region.nbChildren; i++) {
+			if (position >= end)
+				throw corrupt(region.snapshot.getPath());
+			Item child = readUnloaded(region.snapshot, position);
+			if (!children.isEmpty() && NameCodec.compare(children.get(children.size()-1).getEncodedName(),
+					child.getEncodedName()) >= 0)
+				throw corrupt(region.snapshot.getPath());
+			child.attachLoaded(region.dir);
+			children.add(child);
+			if (child instanceof Directory) {
+				SnapshotRegion below = ((Directory)child).region;
+				position = below.position + below.length;
+			} else {
+				position += RECORD_SIZE + 8 * child.getEncodedName().length;
+			}
+		}
+		if (position != end)
+			throw corrupt(region.snapshot.getPath());
+		return children;
+	}
+
+	/**
+	 * Reads the record at the given position of the given lazy snapshot.
+	 * @return	Returns the item of the record, a directory gets the region of the records below it
+	 * 			and its aggregates from the record, its children are not loaded.
+	 */
+	private static Item readUnloaded(LazySnapshot snapshot, long position) throws IOException {
+		ByteBuffer buffer = snapshot.map(position);
+		if (buffer.remaining() < RECORD_SIZE)
+			throw corrupt(snapshot.getPath());
+		byte kind = buffer.get();
+		byte flags = buffer.get();
+		int nbWords = buffer.getChar();
+		int extensionSize = isDirectory(kind) ? getExtensionSize() : 0;
+		if (buffer.remaining() < RECORD_SIZE - 4 + 8 * nbWords + extensionSize)
+			throw corrupt(snapshot.getPath());
+		long[] name = new long[nbWords];
+		for (int i = 0; i < nbWords; i++)
+			name[i] = buffer.getLong();
+		long creationTime = buffer.getLong();
+		long modificationTime = buffer.getLong();
+		int last = buffer.getInt();
+		if (!NameCodec.isValid(name))
+			throw corrupt(snapshot.getPath());
+		if (kind == FILE) {
+			if (!isValidFile(flags, last))
+				throw corrupt(snapshot.getPath());
+			return new File(name, flags, creationTime, modificationTime, last);
+		}
+		if (kind == ITEM) {
+			if (!isValidItem(flags, last))
+				throw corrupt(snapshot.getPath());
+			return new Item(name, flags, creationTime, modificationTime);
+		}
+		if (!isDirectory(kind))
+			throw corrupt(snapshot.getPath());
+		long length = buffer.getLong();
+		long totalSize = buffer.getLong();
+		long totalNbFiles = buffer.getLong();
+		long[] counts = new long[TypeRegistry.getNbTypes()];
+		for (int id = 0; id < counts.length; id++)
+			counts[id] = buffer.getLong();
+		long start = position + RECORD_SIZE + 8 * nbWords + extensionSize;
+		if (last < 0 || length < 0 || length > snapshot.getSize() - start || (last == 0) != (length == 0))
+			throw corrupt(snapshot.getPath());
+		Directory dir = new Directory(name, (byte)(flags & Item.WRITABLE), creationTime, modificationTime,
+				kind == CASE_INSENSITIVE_DIRECTORY);
+		dir.setUnloaded(new SnapshotRegion(snapshot, dir, start, length, last), totalSize, totalNbFiles, counts);
+		return dir;
+	}
+
+	static IOException corrupt(Path path) {
+		return new IOException(path + " is not a valid snapshot");
+	}
+}
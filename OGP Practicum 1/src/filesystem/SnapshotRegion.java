@@ -0,0 +1,47 @@
+package filesystem;
+
+/**
+ * The region of a lazy snapshot that holds the records below a directory.
+ *
+ * A directory keeps its region as long as its children match the records in the
+ * region: its children can then be loaded from the region, and unloaded again.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class SnapshotRegion {
+
+	final LazySnapshot snapshot;
+
+	/**
+	 * Variable referencing the directory whose children are in this region.
+	 */
+	final Directory dir;
+
+	/**
+	 * Variable registering the position in the snapshot of the first record below the directory.
+	 */
+	final long position;
+
+	/**
+	 * Variable registering the number of bytes of the records below the directory.
+	 */
+	final long length;
+
+	final int nbChildren;
+
+	/**
+	 * Variable registering whether the children of the directory have been used since
+	 * the snapshot last looked for directories to unload.
+	 */
+	volatile boolean isReferenced = true;
+
+	SnapshotRegion(LazySnapshot snapshot, Directory dir, long position, long length, int nbChildren) {
+		this.snapshot = snapshot;
+		this.dir = dir;
+		this.position = position;
+		this.length = length;
+		this.nbChildren = nbChildren;
+	}
+}
@@ -0,0 +1,121 @@
+package filesystem;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An index of the files below a directory on their type.
+ *
+ * For every type the index registers the number of files of that type below
+ * the directory, and the carriers of that type: the files of that type directly
+ * in the directory and the subdirectories that have files of that type below them.
+ * Following the carriers only visits directories that lead to files of the type.
+ *
+ * The numbers of files are atomic and can be read without any lock. The carriers of
+ * an index are guarded by the index itself, so changes to the indexes of different
+ * directories do not wait for each other.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class TypeIndex {
+
+	/**
+	 * Variable registering for every type identifier the number of files of that type.
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(TypeRegistry.getNbTypes());
+
+	/**
+	 * Variable referencing for every type identifier the carriers of that type, 
+	 * null as long as there are none.
+	 * @note	The carriers are guarded by this index.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private final Set<Item>[] carriers = new Set[TypeRegistry.getNbTypes()];
+
+	/**
+	 * Returns the number of files of the type with the given identifier.
+	 */
+	long getCount(int id) {
+		return counts.get(id);
+	}
+
+	/**
+	 * Adapts the number of files of the given type and registers whether the given
+	 * item (a file of that type or a subdirectory) still carries that type.
+	 * @param 	id
+	 * 			the identifier of the type
+	 * @param 	delta
+	 * 			the change of the number of files of that type
+	 * @param 	item
+	 * 			the file or subdirectory through which the files are added or removed
+	 * @param 	isCarrier
+	 * 			whether the given item carries the type after the change
+	 */
+	synchronized void update(int id, long delta, Item item, boolean isCarrier) {
+		counts.addAndGet(id, delta);
+		if (isCarrier) {
+			if (carriers[id] == null)
+				carriers[id] = Collections.newSetFromMap(new IdentityHashMap<Item, Boolean>());
+			carriers[id].add(item);
+		} else if (carriers[id] != null) {
+			carriers[id].remove(item);
+			if (carriers[id].isEmpty())
+				carriers[id] = null;
+		}
+	}
+
+	/**
+	 * Adapts the number of files of the given type that are below the given subdirectory,
+	 * and registers whether the subdirectory still carries that type.
+	 * @param 	id
+	 * 			the identifier of the type
+	 * @param 	delta
+	 * 			the change of the number of files of that type
+	 * @param 	dir
+	 * 			the subdirectory below which the files are added or removed
+	 * @note	The subdirectory is registered as a carrier if it has files of the type at the
+	 * 			time of this update. Its index is changed before this one, so the last update
+	 * 			of this index sees the last change to the subdirectory.
+	 */
+	synchronized void propagate(int id, long delta, Directory dir) {
+		update(id, delta, dir, dir.peekCountByType(id) > 0);
+	}
+
+	/**
+	 * Forgets all carriers, and keeps the numbers of files.
+	 */
+	synchronized void clearCarriers() {
+		Arrays.fill(carriers, null);
+	}
+
+	/**
+	 * Adds all the files of the given type that are registered in this index,
+	 * directly or through the indexes of subdirectories, to the given list.
+	 * @param 	unloaded
+	 * 			the list to add the directories to whose children are not loaded,
+	 * 			and whose files are therefore not collected
+	 */
+	void collect(int id, List<File> result, List<Directory> unloaded) {
+		Item[] found;
+		synchronized (this) {
+			if (carriers[id] == null)
+				return;
+			found = carriers[id].toArray(new Item[carriers[id].size()]);
+		}
+		// the subdirectories are visited without holding this index
+		for (Item carrier : found) {
+			if (carrier instanceof File)
+				result.add((File)carrier);
+			else if (!((Directory)carrier).isLoaded())
+				unloaded.add((Directory)carrier);
+			else
+				((Directory)carrier).getTypeIndex().collect(id, result, unloaded);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package filesystem;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A class of static helpers that map the allowed types of files
+ * to small integer identifiers and back.
+ *
+ * The identifier of a type is its index in the list of allowed types.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class TypeRegistry {
+
+	private TypeRegistry() {
+	}
+
+	/**
+	 * Variable referencing the allowed types, in the order of their identifiers.
+	 */
+	private static final List<String> types = Collections.unmodifiableList(Arrays.asList("pdf", "txt", "java"));
+
+	/**
+	 * Variable referencing the identifiers of the allowed types.
+	 */
+	private static final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+
+	static {
+		for (int id = 0; id < types.size(); id++)
+			ids.put(types.get(id), id);
+	}
+
+	/**
+	 * Returns the allowed types, in the order of their identifiers.
+	 */
+	static List<String> getTypes() {
+		return types;
+	}
+
+	/**
+	 * Returns the number of allowed types.
+	 */
+	static int getNbTypes() {
+		return types.size();
+	}
+
+	/**
+	 * Returns the identifier of the given type.
+	 * @return	Returns -1 when the given type is not allowed.
+	 */
+	static int getId(String type) {
+		Integer id = ids.get(type);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the type with the given identifier.
+	 */
+	static String getType(int id) {
+		return types.get(id);
+	}
+}
@@ -0,0 +1,298 @@
+package filesystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of indexes of items on their use periods, that find the items whose use
+ * periods overlap a given period and all pairs of items whose use periods overlap,
+ * with the same results as Item.hasOverlappingUsePeriod.
+ *
+ * The use period of an item runs from its creation time to its modification time, both
+ * included. Items that have not been modified have no use period and are not indexed.
+ * Written as closed intervals [c, max(c, m)], two use periods overlap if and only if
+ * each of them ends no earlier than the other one starts, which is exactly the condition
+ * of hasOverlappingUsePeriod.
+ *
+ * The index holds the use periods of the items at the time it is built, later changes
+ * to the items are not reflected in it. The items are sorted on their creation times,
+ * and form an implicit balanced search tree in which every node registers the latest
+ * end of the use periods below it (an augmented interval tree).
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+public final class UsePeriodIndex {
+
+	/**
+	 * An interface of visitors of pairs of items.
+	 */
+	public interface PairVisitor {
+
+		/**
+		 * Visits the given pair of different items, the first one created no later than the second one.
+		 */
+		void visit(Item first, Item second);
+	}
+
+	/**
+	 * Variable referencing the indexed items, sorted on their creation times.
+	 */
+	private final Item[] items;
+
+	/**
+	 * Variable registering the start of the use period of every indexed item.
+	 */
+	private final long[] starts;
+
+	/**
+	 * Variable registering the end of the use period of every indexed item.
+	 */
+	private final long[] ends;
+
+	/**
+	 * Variable registering for every node of the implicit tree, at the index of its
+	 * item, the latest end of the use periods in its subtree.
+	 */
+	private final long[] maximumEnds;
+
+	/**
+	 * Initialize a new index of the use periods of the given items.
+	 * @param 	items
+	 * 			the items to index
+	 * @post	The items among the given items that have been modified are indexed.
+	 * 			| new.getNbItems() == number of items in items with items.getModificationTime() != null
+	 * @note	Building the index takes O(n log n) time.
+	 */
+	public UsePeriodIndex(Collection<? extends Item> items) {
+		ArrayList<Item> modified = new ArrayList<Item>(items.size());
+		ArrayList<long[]> periods = new ArrayList<long[]>(items.size());
+		for (Item item : items) {
+			// both times are read once, so a concurrent change can not mix two periods
+			long creationTime = item.getCreationMillis();
+			long modificationTime = item.getModificationMillis();
+			if (modificationTime != Item.NOT_MODIFIED) {
+				modified.add(item);
+				periods.add(new long[] {creationTime, Math.max(creationTime, modificationTime), modified.size() - 1});
+			}
+		}
+		long[][] sorted = periods.toArray(new long[periods.size()][]);
+		Arrays.sort(sorted, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] period1, long[] period2) {
+				return Long.compare(period1[0], period2[0]);
+			}
+		});
+		int nbItems = sorted.length;
+		this.items = new Item[nbItems];
+		this.starts = new long[nbItems];
+		this.ends = new long[nbItems];
+		this.maximumEnds = new long[nbItems];
+		for (int i = 0; i < nbItems; i++) {
+			this.items[i] = modified.get((int)sorted[i][2]);
+			this.starts[i] = sorted[i][0];
+			this.ends[i] = sorted[i][1];
+		}
+		computeMaximumEnds(0, nbItems);
+	}
+
+	/**
+	 * Returns a new index of the use periods of the items below the given directory.
+	 * @return	| result == new UsePeriodIndex(dir.stream().collect(Collectors.toList()))
+	 */
+	public static UsePeriodIndex of(Directory dir) {
+		return new UsePeriodIndex(dir.stream().collect(Collectors.toList()));
+	}
+
+	/**
+	 * Registers the maximum ends of the subtree of the items from the given index
+	 * (inclusive) to the given index (exclusive), and returns the latest of them.
+	 */
+	private long computeMaximumEnds(int from, int to) {
+		if (from >= to)
+			return Long.MIN_VALUE;
+		int middle = (from + to) >>> 1;
+		long maximum = Math.max(ends[middle],
+				Math.max(computeMaximumEnds(from, middle), computeMaximumEnds(middle + 1, to)));
+		maximumEnds[middle] = maximum;
+		return maximum;
+	}
+
+	/**
+	 * Returns the number of indexed items.
+	 */
+	@Basic @Immutable
+	public int getNbItems() {
+		return items.length;
+	}
+
+	/**
+	 * Returns the indexed items whose use periods overlap the given period.
+	 * @param 	from
+	 * 			the start of the period, included
+	 * @param 	to
+	 * 			the end of the period, included
+	 * @return	Returns the indexed items whose use period does not end before the
+	 * 			given start and does not start after the given end, in the order of their
+	 * 			creation times.
+	 * @throws	IllegalArgumentException
+	 * 			Throws this exception when the given dates are not effective, or the given
+	 * 			start is later than the given end.
+	 * 			| from == null || to == null || from.after(to)
+	 * @note	Finding the k items takes O((k + 1) log n) time.
+	 */
+	public List<Item> getOverlapping(Date from, Date to) throws IllegalArgumentException {
+		if (from == null || to == null || from.after(to))
+			throw new IllegalArgumentException("The period must be effective and may not end before it starts");
+		ArrayList<Item> result = new ArrayList<Item>();
+		collect(0, items.length, from.getTime(), to.getTime(), null, result);
+		return result;
+	}
+
+	/**
+	 * Returns the indexed items whose use periods overlap the use period of the given item.
+	 * @param 	item
+	 * 			the item to compare with
+	 * @return	Returns the indexed items other than the given item that have an overlapping
+	 * 			use period with it, in the order of their creation times.
+	 * 			| for each other in result: other != item && item.hasOverlappingUsePeriod(other)
+	 */
+	public List<Item> getOverlapping(Item item) {
+		ArrayList<Item> result = new ArrayList<Item>();
+		long creationTime = item.getCreationMillis();
+		long modificationTime = item.getModificationMillis();
+		if (modificationTime != Item.NOT_MODIFIED)
+			collect(0, items.length, creationTime, Math.max(creationTime, modificationTime), item, result);
+		return result;
+	}
+
+	/**
+	 * Adds the items from the given index (inclusive) to the given index (exclusive)
+	 * whose use periods overlap the given period, except the given item, to the given list.
+	 */
+	private void collect(int from, int to, long start, long end, Item except, List<Item> result) {
+		if (from >= to)
+			return;
+		int middle = (from + to) >>> 1;
+		if (maximumEnds[middle] < start)
+			return;
+		collect(from, middle, start, end, except, result);
+		// the items after the middle one do not start earlier
+		if (starts[middle] > end)
+			return;
+		if (ends[middle] >= start && items[middle] != except)
+			result.add(items[middle]);
+		collect(middle + 1, to, start, end, except, result);
+	}
+
+	/**
+	 * Visits all pairs of indexed items whose use periods overlap.
+	 * @param 	visitor
+	 * 			the visitor to visit the pairs
+	 * @effect	The given visitor visits every pair of different indexed items that have an
+	 * 			overlapping use period exactly once, the item that was created first first.
+	 * 			| for each item1, item2 with item1.hasOverlappingUsePeriod(item2):
+	 * 			|	visitor.visit(item1, item2) or visitor.visit(item2, item1)
+	 * @note	The items are swept in the order of their creation times, while a heap holds the
+	 * 			items whose use periods have not ended yet. Visiting the k pairs takes
+	 * 			O(n log n + k) time.
+	 */
+	public void forEachOverlappingPair(PairVisitor visitor) {
+		// a binary min heap of indexes of items on the ends of their use periods
+		int[] heap = new int[items.length];
+		int size = 0;
+		for (int i = 0; i < items.length; i++) {
+			while (size > 0 && ends[heap[0]] < starts[i]) {
+				heap[0] = heap[--size];
+				siftDown(heap, size);
+			}
+			for (int j = 0; j < size; j++)
+				visitor.visit(items[heap[j]], items[i]);
+			heap[size] = i;
+			siftUp(heap, size++);
+		}
+	}
+
+	/**
+	 * Moves the entry at the given index of the given heap up to its place.
+	 */
+	private void siftUp(int[] heap, int index) {
+		int entry = heap[index];
+		while (index > 0 && ends[heap[(index - 1) >>> 1]] > ends[entry]) {
+			heap[index] = heap[(index - 1) >>> 1];
+			index = (index - 1) >>> 1;
+		}
+		heap[index] = entry;
+	}
+
+	/**
+	 * Moves the entry at the top of the given heap of the given size down to its place.
+	 */
+	private void siftDown(int[] heap, int size) {
+		int index = 0;
+		int entry = heap[0];
+		while (2 * index + 1 < size) {
+			int child = 2 * index + 1;
+			if (child + 1 < size && ends[heap[child + 1]] < ends[heap[child]])
+				child++;
+			if (ends[heap[child]] >= ends[entry])
+				break;
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = entry;
+	}
+
+	/**
+	 * Returns all pairs of indexed items whose use periods overlap.
+	 * @return	Returns a list with an array of two items for every pair of different
+	 * 			indexed items that have an overlapping use period, in the order in which
+	 * 			forEachOverlappingPair visits them.
+	 */
+	public List<Item[]> getOverlappingPairs() {
+		final ArrayList<Item[]> result = new ArrayList<Item[]>();
+		forEachOverlappingPair(new PairVisitor() {
+			@Override
+			public void visit(Item first, Item second) {
+				result.add(new Item[] {first, second});
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Returns the number of pairs of indexed items whose use periods overlap.
+	 * @return	| result == getOverlappingPairs().size()
+	 * @note	Two use periods do not overlap if and only if one of them ends before the other
+	 * 			one starts, which can only hold one way round. The pairs that do not overlap
+	 * 			are counted with a binary search per item, in O(n log n) time whatever the
+	 * 			number of overlapping pairs.
+	 */
+	public long countOverlappingPairs() {
+		long[] sortedEnds = ends.clone();
+		Arrays.sort(sortedEnds);
+		long nbDisjoint = 0;
+		for (long start : starts) {
+			// the number of use periods that end before this one starts
+			int low = 0;
+			int high = sortedEnds.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (sortedEnds[middle] < start)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			nbDisjoint += low;
+		}
+		long nbItems = items.length;
+		return nbItems * (nbItems - 1) / 2 - nbDisjoint;
+	}
+}
@@ -0,0 +1,357 @@
+package filesystem;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of watches that deliver the changes to the children of a directory, or to
+ * all items below it, to a listener.
+ *
+ * A change only adds an event to the buffer of every watch that covers it. The first
+ * event in an empty buffer schedules a delivery after the delay of the watch; all changes
+ * that arrive in the mean time are coalesced per item and kind of change, and delivered
+ * together on a delivery thread. A listener that is slow to handle its events only delays
+ * the deliveries of its own watch, never the changes or other watches. When more items
+ * change than the capacity of the buffer, the buffered events are replaced by a single
+ * overflow event, after which the listener should look at the directory again.
+ *
+ * Changes to the watched directory itself are reported to the watches of its directory.
+ * The directories below a watched directory of a lazy snapshot are not unloaded.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+public final class Watch implements Closeable {
+
+	/**
+	 * Variable registering the default delay of a watch, in milliseconds.
+	 */
+	public static final long DEFAULT_DELAY = 50;
+
+	/**
+	 * Variable registering the default number of changed items a watch buffers.
+	 */
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	/**
+	 * Variable referencing the watches of every watched directory.
+	 */
+	private static final ConcurrentHashMap<Directory, Watch[]> watches = new ConcurrentHashMap<Directory, Watch[]>();
+
+	/**
+	 * Variable registering whether any directory is watched, so that changes
+	 * do not look for watches while there are none.
+	 */
+	private static volatile boolean isActive = false;
+
+	private static final ThreadFactory DAEMONS = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "watch delivery");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	/**
+	 * Variable referencing the executor that waits for the delays of the watches.
+	 */
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(DAEMONS);
+
+	/**
+	 * Variable referencing the executor that runs the listeners.
+	 */
+	private static final ExecutorService delivery = Executors.newCachedThreadPool(DAEMONS);
+
+	private final Directory dir;
+
+	private final ChangeListener listener;
+
+	private final boolean isSubtree;
+
+	private final long delay;
+
+	private final int capacity;
+
+	/**
+	 * Variable referencing the buffered events on their items and kinds. Guarded by this watch.
+	 */
+	private LinkedHashMap<Key, ChangeEvent> pending = new LinkedHashMap<Key, ChangeEvent>();
+
+	/**
+	 * Variable registering the number of changes that have been dropped since the
+	 * buffer overflowed, 0 if it has not. Guarded by this watch.
+	 */
+	private long nbDropped = 0;
+
+	/**
+	 * Variable registering whether a delivery is scheduled or running. Guarded by this watch.
+	 */
+	private boolean isScheduled = false;
+
+	private volatile boolean isClosed = false;
+
+	private final Runnable deliver = new Runnable() {
+		@Override
+		public void run() {
+			deliver();
+		}
+	};
+
+	private final Runnable submit = new Runnable() {
+		@Override
+		public void run() {
+			delivery.execute(deliver);
+		}
+	};
+
+	private Watch(Directory dir, ChangeListener listener, boolean isSubtree, long delay, int capacity) {
+		this.dir = dir;
+		this.listener = listener;
+		this.isSubtree = isSubtree;
+		this.delay = delay;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns a new watch on the given directory, see Directory.watch.
+	 */
+	static Watch open(Directory dir, ChangeListener listener, boolean isSubtree, long delay, int capacity)
+			throws IllegalArgumentException {
+		if (listener == null)
+			throw new IllegalArgumentException("The listener must be effective");
+		if (delay < 0 || capacity <= 0)
+			throw new IllegalArgumentException("The delay may not be negative and the capacity must be positive");
+		Watch watch = new Watch(dir, listener, isSubtree, delay, capacity);
+		// a directory is not unloaded while watches are added, see isWatchedBelow
+		Lock structure = Item.structureLock.readLock();
+		structure.lock();
+		try {
+			synchronized (watches) {
+				Watch[] current = watches.get(dir);
+				Watch[] updated = current == null ? new Watch[1] : Arrays.copyOf(current, current.length + 1);
+				updated[updated.length - 1] = watch;
+				watches.put(dir, updated);
+				isActive = true;
+			}
+		} finally {
+			structure.unlock();
+		}
+		return watch;
+	}
+
+	/**
+	 * Returns the watched directory.
+	 */
+	@Basic @Immutable
+	public Directory getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * Returns whether this watch covers all items below its directory, rather than only its children.
+	 */
+	@Basic @Immutable
+	public boolean isSubtree() {
+		return isSubtree;
+	}
+
+	/**
+	 * Returns whether this watch has been closed.
+	 */
+	@Basic
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	/**
+	 * Stops this watch.
+	 * @post	| new.isClosed()
+	 * @note	Events that are buffered are dropped, a delivery that is running is not interrupted.
+	 */
+	@Override
+	public void close() {
+		synchronized (watches) {
+			if (isClosed)
+				return;
+			isClosed = true;
+			Watch[] current = watches.get(dir);
+			ArrayList<Watch> remaining = new ArrayList<Watch>(Arrays.asList(current));
+			remaining.remove(this);
+			if (remaining.isEmpty())
+				watches.remove(dir);
+			else
+				watches.put(dir, remaining.toArray(new Watch[remaining.size()]));
+			isActive = !watches.isEmpty();
+		}
+		synchronized (this) {
+			pending.clear();
+			nbDropped = 0;
+		}
+	}
+
+	/**
+	 * Checks whether a directory strictly below the given directory is watched.
+	 * The caller must hold the write lock of the structure.
+	 */
+	static boolean isWatchedBelow(Directory dir) {
+		if (!isActive)
+			return false;
+		for (Directory watched : watches.keySet()) {
+			if (watched != dir && watched.isDirectOrIndirectSubdirectoryOf(dir))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether the given directory or a directory below it is watched.
+	 * The caller must hold the write lock of the structure.
+	 */
+	static boolean isWatchedWithin(Directory dir) {
+		return isActive && (watches.containsKey(dir) || isWatchedBelow(dir));
+	}
+
+	/**
+	 * Adds the watches that cover the children of the given directory to the given list.
+	 */
+	private static void collect(Directory dir, List<Watch> result) {
+		for (Directory ancestor = dir; ancestor != null; ancestor = ancestor.getDirectory()) {
+			Watch[] found = watches.get(ancestor);
+			if (found != null) {
+				for (Watch watch : found) {
+					if (ancestor == dir || watch.isSubtree)
+						result.add(watch);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reports a change of the given kind to the given item in the given directory.
+	 */
+	static void changed(ChangeEvent.Kind kind, Item item, Directory dir, String oldName, long sizeDelta) {
+		if (!isActive || dir == null)
+			return;
+		ArrayList<Watch> covering = new ArrayList<Watch>();
+		collect(dir, covering);
+		for (Watch watch : covering)
+			watch.add(kind, item, dir, null, oldName, sizeDelta);
+	}
+
+	/**
+	 * Reports that the given item has been moved from the given old directory to the given
+	 * new directory, either of which may be null. A watch that covers both directories gets
+	 * a move, a watch that only covers one of them an addition or a removal.
+	 */
+	static void moved(Item item, Directory oldDir, Directory newDir) {
+		if (!isActive || oldDir == newDir)
+			return;
+		ArrayList<Watch> fromCovering = new ArrayList<Watch>();
+		ArrayList<Watch> toCovering = new ArrayList<Watch>();
+		collect(oldDir, fromCovering);
+		collect(newDir, toCovering);
+		for (Watch watch : fromCovering) {
+			if (toCovering.remove(watch))
+				watch.add(ChangeEvent.Kind.MOVED, item, newDir, oldDir, null, 0);
+			else
+				watch.add(ChangeEvent.Kind.CHILD_REMOVED, item, oldDir, null, null, 0);
+		}
+		for (Watch watch : toCovering)
+			watch.add(ChangeEvent.Kind.CHILD_ADDED, item, newDir, null, null, 0);
+	}
+
+	/**
+	 * Buffers a change, and schedules a delivery if none is scheduled.
+	 */
+	private synchronized void add(ChangeEvent.Kind kind, Item item, Directory directory, Directory oldDirectory,
+			String oldName, long sizeDelta) {
+		if (isClosed)
+			return;
+		if (nbDropped > 0) {
+			nbDropped++;
+		} else {
+			Key key = new Key(kind, item);
+			ChangeEvent event = pending.get(key);
+			if (event != null) {
+				event.merge(directory, sizeDelta);
+			} else if (pending.size() < capacity) {
+				pending.put(key, new ChangeEvent(kind, item, directory, oldDirectory, oldName, sizeDelta));
+			} else {
+				for (ChangeEvent dropped : pending.values())
+					nbDropped += dropped.getCount();
+				nbDropped++;
+				pending.clear();
+			}
+		}
+		if (!isScheduled) {
+			isScheduled = true;
+			scheduler.schedule(submit, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Delivers the buffered events to the listener, and schedules the next delivery
+	 * if changes have arrived in the mean time.
+	 */
+	private void deliver() {
+		List<ChangeEvent> events;
+		synchronized (this) {
+			events = new ArrayList<ChangeEvent>(pending.values());
+			pending = new LinkedHashMap<Key, ChangeEvent>();
+			if (nbDropped > 0)
+				events = Arrays.asList(ChangeEvent.overflow(dir, nbDropped));
+			nbDropped = 0;
+		}
+		try {
+			if (!isClosed && !events.isEmpty())
+				listener.changed(events);
+		} catch (RuntimeException e) {
+			// a failing listener does not stop the deliveries of its watch
+		} finally {
+			synchronized (this) {
+				if (!isClosed && (!pending.isEmpty() || nbDropped > 0))
+					scheduler.schedule(submit, delay, TimeUnit.MILLISECONDS);
+				else
+					isScheduled = false;
+			}
+		}
+	}
+
+	/**
+	 * A class of keys of buffered events: the kind of the changes and the changed item.
+	 */
+	private static final class Key {
+
+		private final ChangeEvent.Kind kind;
+
+		private final Item item;
+
+		Key(ChangeEvent.Kind kind, Item item) {
+			this.kind = kind;
+			this.item = item;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && ((Key)other).kind == kind && ((Key)other).item == item;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(item) + kind.ordinal();
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package filesystem;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of adding files to a directory, with the names in random, ascending
+ * or descending order. Every invocation fills an empty directory at the given depth
+ * with the given number of files; the scores are per filled directory.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddChildBenchmark {
+
+	@Param({"100", "10000"})
+	public int size;
+
+	@Param({"1", "32"})
+	public int depth;
+
+	@Param({"RANDOM", "ASCENDING", "DESCENDING"})
+	public String order;
+
+	private Directory parent;
+
+	private String[] names;
+
+	private Directory dir;
+
+	@Setup(Level.Trial)
+	public void setUpTrial() {
+		parent = Trees.chain(depth - 1);
+		names = Trees.order(Trees.names("file", size), Trees.Order.valueOf(order));
+	}
+
+	@Setup(Level.Invocation)
+	public void setUpInvocation() {
+		dir = new Directory(parent, "target");
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDownInvocation() {
+		dir.makeRoot();
+	}
+
+	@Benchmark
+	public Directory addChild() {
+		for (String name : names)
+			new File(dir, name, 0, true, "txt");
+		return dir;
+	}
+}
@@ -0,0 +1,76 @@
+package filesystem;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of renaming files and moving them between directories. The directories
+ * are at the given depth and have the given number of files. Every operation changes
+ * a file and changes it back, so the directories keep their sizes.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeBenchmark {
+
+	@Param({"100", "10000"})
+	public int size;
+
+	@Param({"1", "32"})
+	public int depth;
+
+	private Directory source;
+
+	private Directory target;
+
+	private File[] files;
+
+	private String[] names;
+
+	private String[] otherNames;
+
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		source = Trees.chain(depth);
+		target = new Directory(source.getDirectory() == null ? source : source.getDirectory(), "target");
+		names = Trees.names("file", size);
+		files = Trees.fill(source, names);
+		Trees.fill(target, Trees.names("other", size));
+		// the other names sort at the other end of the directory
+		otherNames = Trees.names("zfile", size);
+	}
+
+	private int next() {
+		int index = next;
+		next = index + 1 == size ? 0 : index + 1;
+		return index;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public File rename() {
+		int index = next();
+		File file = files[index];
+		file.changeName(otherNames[index]);
+		file.changeName(names[index]);
+		return file;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public File move() {
+		File file = files[next()];
+		file.move(target);
+		file.move(source);
+		return file;
+	}
+}
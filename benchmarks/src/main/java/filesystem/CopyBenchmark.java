@@ -0,0 +1,100 @@
+package filesystem;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of copying a template directory item by item with constructors, and
+ * with copyTo. The template holds 50 directories with the given number of files each.
+ * Besides a plain copy with copyTo, it measures a copy followed by a change to a single
+ * file of the template, which copies only the directories on the way to that file, and
+ * a copy whose items are all read, which copies all of them.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyBenchmark {
+
+	private static final int NB_DIRS = 50;
+
+	@Param({"100", "1000"})
+	public int nbFiles;
+
+	private Directory root;
+
+	private Directory template;
+
+	private File changed;
+
+	private Directory target;
+
+	@Setup(Level.Trial)
+	public void setUpTrial() {
+		root = new Directory("root");
+		template = new Directory(root, "template");
+		String[] names = Trees.names("file", nbFiles);
+		for (int i = 0; i < NB_DIRS; i++) {
+			Directory dir = new Directory(template, "dir" + i);
+			ArrayList<Item> files = new ArrayList<Item>(nbFiles);
+			for (int j = 0; j < nbFiles; j++)
+				files.add(new File(names[j], j, true, "txt"));
+			dir.addAll(files);
+		}
+		changed = (File)template.resolve("dir0/" + names[0]);
+	}
+
+	@Setup(Level.Invocation)
+	public void setUpInvocation() {
+		target = new Directory(root, "target");
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDownInvocation() {
+		// deleting the target copies what the copies still share, so later changes copy nothing
+		target.deleteRecursively();
+	}
+
+	@Benchmark
+	public Directory constructors() {
+		Directory copy = new Directory(target, "copy");
+		copy(template, copy);
+		return copy;
+	}
+
+	@Benchmark
+	public Item copyTo() {
+		return template.copyTo(target, "copy");
+	}
+
+	@Benchmark
+	public Item copyToAndChange() {
+		Item copy = template.copyTo(target, "copy");
+		changed.enlarge(1);
+		return copy;
+	}
+
+	@Benchmark
+	public long copyToAndRead() {
+		return ((Directory)template.copyTo(target, "copy")).stream().count();
+	}
+
+	/**
+	 * Copies the children of the given directory into the given copy, the way it is done without copyTo.
+	 */
+	private static void copy(Directory original, Directory copy) {
+		for (Item child : original.getChildren()) {
+			if (child instanceof Directory)
+				copy((Directory)child, new Directory(copy, child.getName(), child.isWritable()));
+			else
+				new File(copy, child.getName(), ((File)child).getSize(), child.isWritable(), ((File)child).getType());
+		}
+	}
+}
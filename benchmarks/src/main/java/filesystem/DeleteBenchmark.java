@@ -0,0 +1,75 @@
+package filesystem;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of deleting a tree depth first, one item at a time, and with
+ * deleteRecursively. Every invocation deletes a directory holding 100 directories
+ * with the given number of files each.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeleteBenchmark {
+
+	private static final int NB_DIRS = 100;
+
+	@Param({"100", "1000"})
+	public int nbFiles;
+
+	private String[] names;
+
+	private Directory top;
+
+	@Setup(Level.Trial)
+	public void setUpTrial() {
+		names = Trees.names("file", nbFiles);
+	}
+
+	@Setup(Level.Invocation)
+	public void setUpInvocation() {
+		top = new Directory(new Directory("root"), "top");
+		for (int i = 0; i < NB_DIRS; i++) {
+			Directory dir = new Directory(top, "dir" + i);
+			ArrayList<Item> files = new ArrayList<Item>(nbFiles);
+			for (int j = 0; j < nbFiles; j++)
+				files.add(new File(names[j], j, true, "txt"));
+			dir.addAll(files);
+		}
+	}
+
+	@Benchmark
+	public Directory depthFirst() {
+		deleteDepthFirst(top);
+		return top;
+	}
+
+	@Benchmark
+	public Directory deleteRecursively() {
+		top.deleteRecursively();
+		return top;
+	}
+
+	/**
+	 * Deletes the given directory the way it is done without deleteRecursively.
+	 */
+	private static void deleteDepthFirst(Directory dir) {
+		while (dir.getNbItems() > 0) {
+			Item last = dir.getItemAt(dir.getNbItems());
+			if (last instanceof Directory)
+				deleteDepthFirst((Directory)last);
+			else
+				last.delete();
+		}
+		dir.delete();
+	}
+}
@@ -0,0 +1,44 @@
+package filesystem;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of finding the root of the files in a directory at the end of
+ * a chain of directories with the given depth. The directory has the given
+ * number of files.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetRootBenchmark {
+
+	@Param({"100", "10000"})
+	public int size;
+
+	@Param({"1", "32", "1024", "16384"})
+	public int depth;
+
+	private File[] files;
+
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		files = Trees.fill(Trees.chain(depth), Trees.names("file", size));
+	}
+
+	@Benchmark
+	public Item getRoot() {
+		File file = files[next];
+		next = next + 1 == size ? 0 : next + 1;
+		return file.getRoot();
+	}
+}
@@ -0,0 +1,89 @@
+package filesystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of mirroring a directory hierarchy by listing it with java.io.File and
+ * calling a constructor per entry, and with an importer with the given parallelism.
+ * The hierarchy is created in the temporary directory with the given number of
+ * directories with 1000 empty files each, and removed afterwards.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImportBenchmark {
+
+	private static final int NB_FILES = 1000;
+
+	private static final String[] EXTENSIONS = { "pdf", "txt", "java" };
+
+	@Param({"100"})
+	public int nbDirs;
+
+	@Param({"1", "4"})
+	public int parallelism;
+
+	private Path tree;
+
+	private Importer importer;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		tree = Files.createTempDirectory("import");
+		for (int i = 0; i < nbDirs; i++) {
+			Path dir = Files.createDirectory(tree.resolve("dir" + i));
+			for (int j = 0; j < NB_FILES; j++)
+				Files.createFile(dir.resolve("file" + j + "." + EXTENSIONS[j % EXTENSIONS.length]));
+		}
+		importer = new Importer(parallelism);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(tree)) {
+			for (Object path : paths.sorted(Comparator.reverseOrder()).toArray())
+				Files.delete((Path)path);
+		}
+	}
+
+	@Benchmark
+	public Directory importer() throws IOException {
+		return importer.importTree(tree);
+	}
+
+	@Benchmark
+	public Directory legacy() {
+		return legacy(null, new java.io.File(tree.toString()));
+	}
+
+	/**
+	 * Mirrors the given directory into a new directory in the given directory,
+	 * the way it is done without an importer.
+	 */
+	private static Directory legacy(Directory parent, java.io.File source) {
+		Directory dir = parent == null ? new Directory(source.getName()) : new Directory(parent, source.getName(), source.canWrite());
+		for (java.io.File entry : source.listFiles()) {
+			if (entry.isDirectory()) {
+				legacy(dir, entry);
+			} else {
+				String name = entry.getName();
+				int dot = name.lastIndexOf('.');
+				new File(dir, name.substring(0, dot), (int)entry.length(), entry.canWrite(), name.substring(dot + 1));
+			}
+		}
+		return dir;
+	}
+}
@@ -0,0 +1,88 @@
+package filesystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of changes with and without a journal. Every operation creates a file
+ * in the directory of its thread and resizes it, 8 threads change the tree at once.
+ * The policy is the sync policy of the journal, NONE to change the tree without one.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class JournalBenchmark {
+
+	@Param({"NONE", "ALWAYS", "INTERVAL", "NEVER"})
+	public String policy;
+
+	private Path snapshot;
+
+	private Path journalPath;
+
+	private Directory root;
+
+	private Journal journal;
+
+	@Setup(Level.Trial)
+	public void setUpTrial() throws IOException {
+		snapshot = Files.createTempFile("snapshot", ".bin");
+		journalPath = Files.createTempFile("journal", ".log");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownTrial() throws IOException {
+		Files.deleteIfExists(snapshot);
+		Files.deleteIfExists(journalPath);
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpIteration() throws IOException {
+		root = new Directory("root");
+		if (!"NONE".equals(policy))
+			journal = Journal.open(root, snapshot, journalPath, Journal.SyncPolicy.valueOf(policy), 100);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDownIteration() throws IOException {
+		if (journal != null)
+			journal.close();
+		journal = null;
+	}
+
+	/**
+	 * A class of the directories the threads change, one per thread.
+	 */
+	@State(Scope.Thread)
+	public static class Changer {
+
+		private Directory dir;
+
+		private int next;
+
+		@Setup(Level.Iteration)
+		public void setUp(JournalBenchmark benchmark) {
+			dir = new Directory(benchmark.root, "dir" + Thread.currentThread().getId());
+			next = 0;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public File change(Changer changer) {
+		File file = new File(changer.dir, "file" + changer.next++, 10, true, "txt");
+		file.enlarge(5);
+		return file;
+	}
+}
@@ -0,0 +1,88 @@
+package filesystem;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of looking up the children of a directory at the given depth
+ * that has the given number of files.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+	@Param({"100", "10000", "1000000"})
+	public int size;
+
+	@Param({"1", "32"})
+	public int depth;
+
+	private Directory dir;
+
+	private File[] files;
+
+	private String[] names;
+
+	private String[] missingNames;
+
+	private long[][] encodedNames;
+
+	/**
+	 * Variable registering the index of the next name to look up, the names are
+	 * visited in random order so that the lookups do not hit the same cache lines.
+	 */
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		dir = Trees.chain(depth);
+		files = Trees.fill(dir, Trees.names("file", size));
+		names = Trees.order(Trees.names("file", size), Trees.Order.RANDOM);
+		missingNames = Trees.order(Trees.names("missing", size), Trees.Order.RANDOM);
+		encodedNames = new long[size][];
+		for (int i = 0; i < size; i++)
+			encodedNames[i] = NameCodec.encode(names[i]);
+	}
+
+	private int next() {
+		int index = next;
+		next = index + 1 == size ? 0 : index + 1;
+		return index;
+	}
+
+	@Benchmark
+	public Item getItemHit() {
+		return dir.getItem(names[next()]);
+	}
+
+	@Benchmark
+	public Item getItemMiss() {
+		return dir.getItem(missingNames[next()]);
+	}
+
+	/**
+	 * The binary search over the sorted children, that getItemHit is compared with.
+	 */
+	@Benchmark
+	public int binarySearchHit() {
+		return dir.binarySearch(0, dir.getNbItems()-1, encodedNames[next()]);
+	}
+
+	@Benchmark
+	public boolean exists() {
+		return dir.exists(names[next()]);
+	}
+
+	@Benchmark
+	public int getIndexOf() {
+		return dir.getIndexOf(files[next()]);
+	}
+}
@@ -0,0 +1,63 @@
+package filesystem;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of the cost of measuring operations. It compares an empty method with
+ * the hooks around an operation, and looks up the children of a directory with the
+ * given number of files, without a recorder and with metrics installed.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+	@Param({"100", "10000"})
+	public int size;
+
+	@Param({"none", "metrics"})
+	public String recorder;
+
+	private Directory dir;
+
+	private String[] names;
+
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		dir = Trees.chain(1);
+		Trees.fill(dir, Trees.names("file", size));
+		names = Trees.order(Trees.names("file", size), Trees.Order.RANDOM);
+		Metrics.setRecorder(recorder.equals("none") ? null : new Metrics());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		Metrics.setRecorder(null);
+	}
+
+	@Benchmark
+	public void baseline() {
+	}
+
+	@Benchmark
+	public void hooks() {
+		Metrics.stop(Metrics.Operation.GET_ITEM, Metrics.start());
+	}
+
+	@Benchmark
+	public Item getItem() {
+		int index = next;
+		next = index + 1 == size ? 0 : index + 1;
+		return dir.getItem(names[index]);
+	}
+}
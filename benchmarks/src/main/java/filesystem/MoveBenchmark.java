@@ -0,0 +1,66 @@
+package filesystem;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of threads that move files between directories at the same time.
+ * The given number of files is shuffled between the given number of directories
+ * by 8 threads.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class MoveBenchmark {
+
+	@Param({"16"})
+	public int nbDirs;
+
+	@Param({"10000"})
+	public int nbFiles;
+
+	private Directory[] dirs;
+
+	private File[] files;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Directory root = new Directory("root");
+		dirs = new Directory[nbDirs];
+		for (int i = 0; i < nbDirs; i++)
+			dirs[i] = new Directory(root, "dir" + i);
+		String[] names = Trees.names("file", nbFiles);
+		files = new File[nbFiles];
+		for (int i = 0; i < nbFiles; i++)
+			files[i] = new File(dirs[i % nbDirs], names[i], "txt");
+	}
+
+	/**
+	 * A class of the random numbers of one thread.
+	 */
+	@State(Scope.Thread)
+	public static class Picker {
+
+		private final Random random = new Random(Thread.currentThread().getId());
+	}
+
+	@Benchmark
+	public File move(Picker picker) {
+		File file = files[picker.random.nextInt(files.length)];
+		try {
+			file.move(dirs[picker.random.nextInt(dirs.length)]);
+		} catch (AlreadyExistsException e) {
+			//the file already is in that directory
+		}
+		return file;
+	}
+}
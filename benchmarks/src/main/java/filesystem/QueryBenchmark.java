@@ -0,0 +1,88 @@
+package filesystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of a query over a tree with 2000 directories with the given number of
+ * files each, with a pool of the given number of threads, compared with a recursive
+ * walk on a single thread.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+	private static final int NB_DIRS = 2000;
+
+	private static final long MINIMUM_SIZE = 9000;
+
+	@Param({"500"})
+	public int nbFiles;
+
+	@Param({"1", "2", "4"})
+	public int parallelism;
+
+	private Directory root;
+
+	private ItemPredicate query;
+
+	private ForkJoinPool pool;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		root = new Directory("root");
+		Random random = new Random(42);
+		List<String> types = File.getAllowedTypes();
+		String[] names = Trees.names("file", nbFiles);
+		for (int i = 0; i < NB_DIRS; i++) {
+			Directory dir = new Directory(root, "dir" + i);
+			ArrayList<Item> files = new ArrayList<Item>(nbFiles);
+			for (int j = 0; j < nbFiles; j++)
+				files.add(new File(names[j], random.nextInt(10000), true, types.get(random.nextInt(types.size()))));
+			dir.addAll(files);
+		}
+		query = ItemPredicate.sizeGreaterThan(MINIMUM_SIZE).and(ItemPredicate.typeIn("pdf"));
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public List<Item> find() {
+		return root.find(query, pool);
+	}
+
+	@Benchmark
+	public List<Item> walk() {
+		ArrayList<Item> result = new ArrayList<Item>();
+		walk(root, result);
+		return result;
+	}
+
+	/**
+	 * The hand-written query the benchmark compares with.
+	 */
+	private static void walk(Directory dir, List<Item> result) {
+		for (Item item : dir.getChildren()) {
+			if (item instanceof Directory)
+				walk((Directory)item, result);
+			else if (item instanceof File && ((File)item).getSize() > MINIMUM_SIZE && "pdf".equals(((File)item).getType()))
+				result.add(item);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package filesystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of creating a tree through the constructors, writing it to a snapshot,
+ * loading it from the snapshot, and opening the snapshot lazily and using a working set
+ * of 1% of the directories. The tree has the given number of directories with 99 files
+ * each. Run it with -prof gc to compare the memory allocated by loading and opening.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+	private static final int NB_FILES = 99;
+
+	@Param({"10000"})
+	public int nbDirs;
+
+	private Directory root;
+
+	private Path path;
+
+	private Path target;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		root = replay();
+		path = Files.createTempFile("snapshot", ".bin");
+		target = Files.createTempFile("snapshot", ".bin");
+		Snapshot.write(root, path);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+		Files.deleteIfExists(target);
+	}
+
+	@Benchmark
+	public Directory replay() {
+		Random random = new Random(42);
+		List<String> types = File.getAllowedTypes();
+		Directory root = new Directory("root");
+		for (int i = 0; i < nbDirs; i++) {
+			Directory dir = new Directory(root, "dir" + i);
+			for (int j = 0; j < NB_FILES; j++)
+				new File(dir, "file" + j, random.nextInt(100000), true, types.get(random.nextInt(types.size())));
+		}
+		return root;
+	}
+
+	@Benchmark
+	public Path write() throws IOException {
+		Snapshot.write(root, target);
+		return target;
+	}
+
+	@Benchmark
+	public Directory read() throws IOException {
+		return Snapshot.read(path);
+	}
+
+	@Benchmark
+	public Directory openLazily() throws IOException {
+		LazySnapshot lazy = LazySnapshot.open(path);
+		Random random = new Random(7);
+		for (int i = 0; i < nbDirs / 100; i++)
+			((Directory)lazy.getRoot().getItem("dir" + random.nextInt(nbDirs))).getItem("file0");
+		return lazy.getRoot();
+	}
+}
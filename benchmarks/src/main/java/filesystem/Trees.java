@@ -0,0 +1,79 @@
+package filesystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * A class of static helpers that build the trees the benchmarks work on.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+final class Trees {
+
+	private Trees() {
+	}
+
+	/**
+	 * Returns the deepest directory of a new chain of directories.
+	 * @param 	depth
+	 * 			the depth of the returned directory, 0 for a root directory
+	 */
+	static Directory chain(int depth) {
+		Directory dir = new Directory("root");
+		for (int i = 1; i <= depth; i++)
+			dir = new Directory(dir, "level" + i);
+		return dir;
+	}
+
+	/**
+	 * Returns the given number of distinct names, in ascending order.
+	 * All names have the same length, so they sort on their numbers.
+	 */
+	static String[] names(String prefix, int nbNames) {
+		String[] names = new String[nbNames];
+		for (int i = 0; i < nbNames; i++)
+			names[i] = String.format("%s%08d", prefix, i);
+		return names;
+	}
+
+	/**
+	 * Returns the given names in the given order.
+	 */
+	static String[] order(String[] names, Order order) {
+		ArrayList<String> result = new ArrayList<String>(names.length);
+		Collections.addAll(result, names);
+		switch (order) {
+		case RANDOM:
+			Collections.shuffle(result, new Random(42));
+			break;
+		case DESCENDING:
+			Collections.reverse(result);
+			break;
+		default:
+			break;
+		}
+		return result.toArray(new String[names.length]);
+	}
+
+	/**
+	 * Adds a file with every given name to the given directory in one batch, and returns the files.
+	 */
+	static File[] fill(Directory dir, String[] names) {
+		File[] files = new File[names.length];
+		for (int i = 0; i < names.length; i++)
+			files[i] = new File(names[i], 0, true, "txt");
+		dir.addAll(Arrays.<Item>asList(files));
+		return files;
+	}
+
+	/**
+	 * An enumeration of the orders in which names are added to a directory.
+	 */
+	enum Order {
+		RANDOM, ASCENDING, DESCENDING
+	}
+}
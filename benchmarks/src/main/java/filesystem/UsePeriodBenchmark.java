@@ -0,0 +1,81 @@
+package filesystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A benchmark of finding all pairs of items with overlapping use periods, by comparing
+ * every pair with hasOverlappingUsePeriod and with a use period index. The items are
+ * the given number of files created during a year, that are used for a random period
+ * of a day on average.
+ *
+ * @author Robin Bruneel, Jean-Louis Carron, Edward Wiels
+ * @version 1.0
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UsePeriodBenchmark {
+
+	private static final long DAY = 24 * 3600 * 1000L;
+
+	@Param({"2000", "20000"})
+	public int size;
+
+	private List<Item> items;
+
+	private UsePeriodIndex index;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42);
+		items = new ArrayList<Item>(size);
+		for (int i = 0; i < size; i++) {
+			long creationTime = (long)(random.nextDouble() * 365 * DAY);
+			long modificationTime = creationTime + (long)(-Math.log(1 - random.nextDouble()) * DAY);
+			items.add(new File(NameCodec.encode("file" + i), File.getFlags(true, 0), creationTime, modificationTime, 0));
+		}
+		index = new UsePeriodIndex(items);
+	}
+
+	@Benchmark
+	public long everyPair() {
+		long nbPairs = 0;
+		for (int i = 0; i < items.size(); i++) {
+			for (int j = i + 1; j < items.size(); j++) {
+				if (items.get(i).hasOverlappingUsePeriod(items.get(j)))
+					nbPairs++;
+			}
+		}
+		return nbPairs;
+	}
+
+	@Benchmark
+	public UsePeriodIndex buildIndex() {
+		return new UsePeriodIndex(items);
+	}
+
+	@Benchmark
+	public long visitPairs() {
+		final long[] nbPairs = new long[1];
+		index.forEachOverlappingPair(new UsePeriodIndex.PairVisitor() {
+			@Override
+			public void visit(Item first, Item second) {
+				nbPairs[0]++;
+			}
+		});
+		return nbPairs[0];
+	}
+
+	@Benchmark
+	public long countPairs() {
+		return index.countOverlappingPairs();
+	}
+}